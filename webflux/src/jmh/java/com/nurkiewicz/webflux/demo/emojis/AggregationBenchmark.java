@@ -0,0 +1,77 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Aggregating one decoded tracker event: boxed {@link HashMap#merge} (previous <code>scan()</code>)
+ * vs. primitive {@link EmojiCounts}. Run with <code>gc</code> profiler to compare allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AggregationBenchmark {
+
+	private List<Map<String, Integer>> events;
+	private int next;
+
+	private Map<String, Integer> hashMap;
+	private EmojiCounts emojiCounts;
+
+	@Setup
+	public void loadEvents() throws IOException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		events = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/emojis.txt"), UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				events.add(objectMapper.readValue(line, new TypeReference<Map<String, Integer>>() {}));
+			}
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		hashMap = new HashMap<>();
+		emojiCounts = new EmojiCounts();
+	}
+
+	private Map<String, Integer> nextEvent() {
+		next = (next + 1) % events.size();
+		return events.get(next);
+	}
+
+	@Benchmark
+	public Map<String, Integer> hashMapMerge() {
+		nextEvent().forEach((emoji, count) -> hashMap.merge(emoji, count, Integer::sum));
+		return hashMap;
+	}
+
+	@Benchmark
+	public EmojiCounts emojiCounts() {
+		for (Map.Entry<String, Integer> e : nextEvent().entrySet()) {
+			emojiCounts.add(e.getKey(), e.getValue());
+		}
+		return emojiCounts;
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Decoding whole <code>emojis.txt</code> (one SSE frame per line, delivered in 8 KiB buffers):
+ * {@link EmojiEventDecoder} vs. Jackson into <code>Map&lt;String, Integer&gt;</code>, like
+ * <code>bodyToFlux(new ParameterizedTypeReference&lt;Map&lt;String, Integer&gt;&gt;() {})</code> does.
+ * Multiply score by number of lines in the corpus to get events/sec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DecoderBenchmark {
+
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final TypeReference<Map<String, Integer>> mapType = new TypeReference<>() {};
+
+	private List<byte[]> chunks;
+	private List<String> lines;
+
+	@Setup
+	public void setup() throws IOException {
+		byte[] corpus;
+		try (InputStream inputStream = getClass().getResourceAsStream("/emojis.txt")) {
+			corpus = inputStream.readAllBytes();
+		}
+		lines = Arrays.asList(new String(corpus, UTF_8).split("\n"));
+		ByteArrayOutputStream sse = new ByteArrayOutputStream();
+		for (String line : lines) {
+			sse.writeBytes(("data:" + line + "\n\n").getBytes(UTF_8));
+		}
+		byte[] bytes = sse.toByteArray();
+		chunks = new ArrayList<>();
+		for (int from = 0; from < bytes.length; from += CHUNK_SIZE) {
+			chunks.add(Arrays.copyOfRange(bytes, from, Math.min(from + CHUNK_SIZE, bytes.length)));
+		}
+	}
+
+	@Benchmark
+	public long streamingDecoder() {
+		EmojiEventDecoder decoder = new EmojiEventDecoder();
+		long total = 0;
+		for (byte[] chunk : chunks) {
+			DataBuffer buffer = bufferFactory.wrap(chunk);
+			for (EmojiUpdate event : decoder.decode(buffer)) {
+				total += event.total();
+			}
+		}
+		return total;
+	}
+
+	@Benchmark
+	public long jacksonMap() throws IOException {
+		long total = 0;
+		for (String line : lines) {
+			for (Integer count : objectMapper.readValue(line, mapType).values()) {
+				total += count;
+			}
+		}
+		return total;
+	}
+
+}
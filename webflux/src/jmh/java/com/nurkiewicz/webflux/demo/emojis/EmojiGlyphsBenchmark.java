@@ -0,0 +1,54 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Rendering typical <code>/emojis/topStr</code> (top 10):
+ * cached {@link EmojiGlyphs} vs. parsing every code on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EmojiGlyphsBenchmark {
+
+	private final String[] top = {"1F602", "2764", "1F60D", "1F62D", "1F60A", "1F495", "1F618", "0023-20E3", "1F44D", "263A"};
+
+	@Benchmark
+	public String cached() {
+		StringBuilder emojis = new StringBuilder();
+		for (String code : top) {
+			emojis.append(EmojiGlyphs.of(code));
+		}
+		return emojis.toString();
+	}
+
+	@Benchmark
+	public String parsed() {
+		StringBuilder emojis = new StringBuilder();
+		for (String code : top) {
+			emojis.append(previousCodeToEmoji(code));
+		}
+		return emojis.toString();
+	}
+
+	private static String previousCodeToEmoji(String hex) {
+		final String[] codes = hex.split("-");
+		if (codes.length == 2) {
+			return hexToEmoji(codes[0]) + hexToEmoji(codes[1]);
+		} else {
+			return hexToEmoji(hex);
+		}
+	}
+
+	private static String hexToEmoji(String hex) {
+		return new String(Character.toChars(Integer.parseInt(hex, 16)));
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static java.util.Comparator.reverseOrder;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * One increment of a random (skewed) key followed by recomputing top 10:
+ * incremental {@link TopK} vs. full sort of all counters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TopKBenchmark {
+
+	private static final int LIMIT = 10;
+	private static final int SAMPLES = 1 << 16;
+
+	@Param({"1000", "10000", "100000"})
+	int distinctKeys;
+
+	private String[] keys;
+	private int next;
+
+	private final Map<String, Long> counts = new HashMap<>();
+	private TopK topK;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		keys = new String[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			keys[i] = Integer.toHexString(0x1F000 + (int) (distinctKeys * Math.pow(random.nextDouble(), 3)));
+		}
+		for (int i = 0; i < distinctKeys; i++) {
+			counts.put(Integer.toHexString(0x1F000 + i), 1L);
+		}
+		topK = new TopK(LIMIT);
+		counts.forEach(topK::update);
+	}
+
+	private String nextKey() {
+		return keys[next++ & (SAMPLES - 1)];
+	}
+
+	@Benchmark
+	public boolean incremental() {
+		String key = nextKey();
+		return topK.update(key, counts.merge(key, 1L, Long::sum));
+	}
+
+	@Benchmark
+	public Map<String, Long> fullSort() {
+		counts.merge(nextKey(), 1L, Long::sum);
+		return topValues(counts, LIMIT);
+	}
+
+	/**
+	 * Previous implementation from {@link EmojiController}
+	 */
+	private static <T> Map<T, Long> topValues(Map<T, Long> agg, int n) {
+		return new HashMap<>(agg
+				.entrySet()
+				.stream()
+				.sorted(Map.Entry.comparingByValue(reverseOrder()))
+				.limit(n)
+				.collect(toMap(Map.Entry::getKey, Map.Entry::getValue)));
+	}
+
+}
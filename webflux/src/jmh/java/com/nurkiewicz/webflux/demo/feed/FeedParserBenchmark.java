@@ -0,0 +1,77 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.rometools.rome.feed.synd.SyndEntry;
+import com.rometools.rome.io.SyndFeedInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Document;
+
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parsing multi-megabyte RSS feed: {@link FeedParser} vs. previous
+ * <code>String</code> + namespace fix + DOM + Rome pipeline.
+ * Run with <code>-prof gc</code> (default in <code>build.gradle</code>) to compare bytes allocated per feed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FeedParserBenchmark {
+
+	@Param({"1000", "10000"})
+	int items;
+
+	private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+	private byte[] feed;
+
+	@Setup
+	public void setup() {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+				"<rss version=\"2.0\"><channel><title>Blog</title><link>http://example.com</link><description>Blog</description>");
+		for (int i = 0; i < items; i++) {
+			xml
+					.append("<item><title>Article ").append(i).append("</title>")
+					.append("<link>http://example.com/article/").append(i).append("</link>")
+					.append("<pubDate>Mon, 01 Jan 2024 00:00:00 GMT</pubDate>")
+					.append("<description><![CDATA[<p>")
+					.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(10))
+					.append("</p>]]></description></item>");
+		}
+		feed = xml.append("</channel></rss>").toString().getBytes(UTF_8);
+	}
+
+	@Benchmark
+	public long streaming() {
+		return FeedParser
+				.parse(bufferFactory.wrap(feed))
+				.map(SyndEntry::getLink)
+				.count()
+				.block();
+	}
+
+	@Benchmark
+	public long stringAndDom() throws Exception {
+		String body = new String(feed, UTF_8)
+				.replace("https://www.w3.org/2005/Atom", "http://www.w3.org/2005/Atom");
+		Document document = DocumentBuilderFactory
+				.newInstance()
+				.newDocumentBuilder()
+				.parse(new ByteArrayInputStream(body.getBytes(UTF_8)));
+		return new SyndFeedInput().build(document).getEntries().size();
+	}
+
+}
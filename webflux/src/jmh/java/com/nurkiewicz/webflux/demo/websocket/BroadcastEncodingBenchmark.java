@@ -0,0 +1,72 @@
+package com.nurkiewicz.webflux.demo.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Preparing one chat message for all recipients, up to the point where transport takes over (and releases) the payload:
+ * <code>session.textMessage(String)</code> per recipient (encodes and copies every time) vs. encoding once
+ * into a pooled buffer and handing out retained slices, like {@link ChatHub} does.
+ * Run with <code>gc</code> profiler (configured in <code>build.gradle</code>) and compare <code>gc.alloc.rate.norm</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BroadcastEncodingBenchmark {
+
+	@Param({"10000"})
+	int recipients;
+
+	@Param({"32", "1024"})
+	int messageLength;
+
+	private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+	private String message;
+
+	@Setup
+	public void setup() {
+		message = "Zażółć gęślą jaźń ".repeat(messageLength / 18 + 1).substring(0, messageLength);
+	}
+
+	@Benchmark
+	public void encodePerRecipient(Blackhole bh) {
+		for (int i = 0; i < recipients; i++) {
+			// what WebSocketSession.textMessage() does
+			DataBuffer payload = bufferFactory.wrap(message.getBytes(UTF_8));
+			bh.consume(new WebSocketMessage(WebSocketMessage.Type.TEXT, payload));
+			DataBufferUtils.release(payload);
+		}
+	}
+
+	@Benchmark
+	public void encodeOnceAndShare(Blackhole bh) {
+		DataBuffer encoded = bufferFactory
+				.allocateBuffer(message.length())
+				.write(message, UTF_8);
+		for (int i = 0; i < recipients; i++) {
+			DataBuffer payload = encoded.retainedSlice(encoded.readPosition(), encoded.readableByteCount());
+			bh.consume(new WebSocketMessage(WebSocketMessage.Type.TEXT, payload));
+			DataBufferUtils.release(payload);
+		}
+		DataBufferUtils.release(encoded);
+	}
+
+}
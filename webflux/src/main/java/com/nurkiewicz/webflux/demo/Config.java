@@ -1,9 +1,11 @@
 package com.nurkiewicz.webflux.demo;
 
+import io.netty.channel.ChannelOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.http.CacheControl;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -13,7 +15,9 @@ import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -29,15 +33,76 @@ class Config {
 
     private static final Logger log = LoggerFactory.getLogger(Config.class);
 
+    /**
+     * General purpose client, e.g. for <code>/proxy</code>.
+     * Every use case has its own, named connection pool, so that e.g. slow feed hosts
+     * never starve emoji stream of connections. Pools are per remote address,
+     * <code>maxConnections</code> limits connections to a single host.
+     * Active, idle and pending acquire gauges are published to Micrometer
+     * as <code>reactor.netty.connection.provider.*</code>, tagged with pool name and remote address.
+     */
     @Bean
+    @Primary
     WebClient webClient() {
+        final ConnectionProvider provider = ConnectionProvider
+                .builder("default")
+                .maxConnections(50)
+                .pendingAcquireMaxCount(500)
+                .pendingAcquireTimeout(Duration.ofSeconds(10))
+                .metrics(true)
+                .build();
+        return webClient(HttpClient.create(provider));
+    }
+
+    /**
+     * Feed fetching: thousands of hosts, each polled rarely.
+     * Few connections per host, idle ones closed quickly, strict timeouts so that a stuck host
+     * releases its connections.
+     *
+     * @see com.nurkiewicz.webflux.demo.feed.HostLimiter
+     */
+    @Bean
+    WebClient feedWebClient() {
+        final ConnectionProvider provider = ConnectionProvider
+                .builder("feeds")
+                .maxConnections(8)
+                .pendingAcquireMaxCount(64)
+                .pendingAcquireTimeout(Duration.ofSeconds(30))
+                .maxIdleTime(Duration.ofSeconds(30))
+                .evictInBackground(Duration.ofSeconds(60))
+                .metrics(true)
+                .build();
+        return webClient(HttpClient
+                .create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5_000)
+                .responseTimeout(Duration.ofSeconds(30)));
+    }
+
+    /**
+     * Single long-lived event stream, no response timeout.
+     */
+    @Bean
+    WebClient emojiWebClient() {
+        final ConnectionProvider provider = ConnectionProvider
+                .builder("emoji-tracker")
+                .maxConnections(2)
+                .pendingAcquireMaxCount(4)
+                .metrics(true)
+                .build();
+        return webClient(HttpClient
+                .create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5_000));
+    }
+
+    /**
+     * Codecs keep the default, small <code>maxInMemorySize</code>: it only limits bodies aggregated in memory
+     * (e.g. <code>bodyToMono(String.class)</code>). Large bodies should be streamed as <code>DataBuffer</code>s,
+     * with a limit chosen per call, like feeds in {@link com.nurkiewicz.webflux.demo.feed.FeedReader}.
+     */
+    private static WebClient webClient(HttpClient httpClient) {
         return WebClient
                 .builder()
-                .clientConnector(new ReactorClientHttpConnector(
-                        HttpClient.create().followRedirect(true)
-                ))
-                .codecs(codecs ->
-                        codecs.defaultCodecs().maxInMemorySize(1024 * 1024 * 10))
+                .clientConnector(new ReactorClientHttpConnector(httpClient.followRedirect(true)))
                 .build();
     }
 
@@ -2,6 +2,7 @@ package com.nurkiewicz.webflux.demo;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,6 +17,7 @@ import java.util.concurrent.TimeUnit;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
+import static org.springframework.http.MediaType.TEXT_HTML_VALUE;
 
 // TODO:
 //  – RestTemplate – not async (uses single thread) and blocking (thread is blocked until request finishes)
@@ -93,13 +95,16 @@ class ReactorController {
 				);
 	}
 
-	@GetMapping("/proxy")
-	Flux<String> exampleProxy() {
+	/**
+	 * Streams upstream body chunk by chunk, without decoding or aggregating it
+	 */
+	@GetMapping(value = "/proxy", produces = TEXT_HTML_VALUE)
+	Flux<DataBuffer> exampleProxy() {
 		return webClient
 				.get()
 				.uri("https://www.onet.pl/")
 				.retrieve()
-				.bodyToFlux(String.class);
+				.bodyToFlux(DataBuffer.class);
 	}
 
 	@GetMapping("/leak")
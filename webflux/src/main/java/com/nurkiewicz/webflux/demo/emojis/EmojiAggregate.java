@@ -0,0 +1,138 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Total count of every emoji seen since startup, streamed as deltas.
+ * <p>
+ * Tracker events are counted only while at least one client is connected: ingestion is shared by all clients
+ * and stops with the last one, so the shared tracker connection is closed when nobody listens.
+ * Counters survive such pauses, they just miss what the tracker sent in the meantime.
+ * <p>
+ * Every tracker event bumps a global sequence number and every counter remembers the sequence of its last change.
+ * First SSE event is a full <code>snapshot</code>, subsequent <code>delta</code> events carry only counters
+ * that changed since the previous event sent to that client, with their new totals. Event ids are
+ * <code>bootId:sequence</code>, so a reconnecting client sending <code>Last-Event-ID</code> gets only what it missed,
+ * unless the server restarted in the meantime.
+ * <p>
+ * Deltas of consecutive events are computed and serialised once and shared by all clients that are up to date.
+ * A client that fell behind (values are conflated, see {@link Overflow#LATEST}) gets one merged delta instead.
+ */
+@Component
+class EmojiAggregate {
+
+    static final String SNAPSHOT = "snapshot";
+    static final String DELTA = "delta";
+
+    private final ObjectMapper objectMapper;
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final EmojiCounts counts = new EmojiCounts();
+    private final Sinks.Many<Delta> deltas = Sinks.many().multicast().directBestEffort();
+    private final Flux<ServerSentEvent<String>> ingestion;
+    private long sequence;
+
+    EmojiAggregate(EmojiController emojiController, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.ingestion = emojiController
+                .emojis()
+                .doOnNext(this::add)
+                .<ServerSentEvent<String>>handle((event, sink) -> {})
+                .share();
+    }
+
+    void add(EmojiUpdate event) {
+        final Delta delta;
+        synchronized (counts) {
+            final long version = ++sequence;
+            final Map<String, Integer> changed = new HashMap<>();
+            for (int i = 0; i < event.size(); i++) {
+                changed.put(event.code(i), TopK.saturatedInt(counts.add(event.code(i), event.count(i), version)));
+            }
+            delta = new Delta(version - 1, version, toJson(changed));
+        }
+        deltas.tryEmitNext(delta);
+    }
+
+    /**
+     * @param lastEventId id of the last event received by a reconnecting client, <code>null</code> for new clients
+     */
+    Flux<ServerSentEvent<String>> stream(String lastEventId) {
+        return Flux.defer(() -> {
+            final long[] sent = {resumedSequence(lastEventId)};
+            return Flux.concat(
+                    Mono.fromCallable(() -> catchUp(sent)),
+                    deltas.asFlux()
+                            .onBackpressureLatest()
+                            .<ServerSentEvent<String>>handle((delta, sink) -> {
+                                if (delta.previous == sent[0]) {
+                                    sent[0] = delta.sequence;
+                                    sink.next(event(DELTA, delta.sequence, delta.json));
+                                } else if (delta.sequence > sent[0]) {
+                                    sink.next(catchUp(sent));
+                                }
+                            }))
+                    .mergeWith(ingestion);
+        });
+    }
+
+    private ServerSentEvent<String> catchUp(long[] sent) {
+        synchronized (counts) {
+            final String type = sent[0] < 0 ? SNAPSHOT : DELTA;
+            final Map<String, Integer> changed = sent[0] < 0 ? counts.snapshot() : counts.changedSince(sent[0]);
+            sent[0] = sequence;
+            return event(type, sequence, toJson(changed));
+        }
+    }
+
+    private long resumedSequence(String lastEventId) {
+        if (lastEventId == null || !lastEventId.startsWith(bootId + ":")) {
+            return -1;
+        }
+        try {
+            final long resumed = Long.parseLong(lastEventId.substring(bootId.length() + 1));
+            synchronized (counts) {
+                return resumed >= 0 && resumed <= sequence ? resumed : -1;
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private ServerSentEvent<String> event(String type, long sequence, String json) {
+        return ServerSentEvent
+                .builder(json)
+                .id(bootId + ":" + sequence)
+                .event(type)
+                .build();
+    }
+
+    private String toJson(Map<String, Integer> counts) {
+        try {
+            return objectMapper.writeValueAsString(counts);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Delta {
+        private final long previous;
+        private final long sequence;
+        private final String json;
+
+        Delta(long previous, long sequence, String json) {
+            this.previous = previous;
+            this.sequence = sequence;
+            this.json = json;
+        }
+    }
+
+}
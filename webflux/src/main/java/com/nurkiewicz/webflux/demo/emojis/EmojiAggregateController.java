@@ -0,0 +1,30 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
+
+@RestController
+public class EmojiAggregateController {
+
+    private final EmojiAggregate emojiAggregate;
+
+    EmojiAggregateController(EmojiAggregate emojiAggregate) {
+        this.emojiAggregate = emojiAggregate;
+    }
+
+    /**
+     * Like <code>/emojis/aggregated</code>, but counting since server startup and sending only changed counters.
+     *
+     * @see EmojiAggregate
+     */
+    @GetMapping(value = "/emojis/aggregated/delta", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<ServerSentEvent<String>> deltas(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return emojiAggregate.stream(lastEventId);
+    }
+
+}
@@ -1,52 +1,97 @@
 package com.nurkiewicz.webflux.demo.emojis;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
 
 import java.net.URI;
 import java.time.Duration;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
-import static java.util.Comparator.reverseOrder;
-import static java.util.stream.Collectors.toMap;
 import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
 @RestController
 public class EmojiController {
 
+    private static final Logger log = LoggerFactory.getLogger(EmojiController.class);
+
+    private static final int SUBSCRIBER_BUFFER_SIZE = 256;
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(1);
+    private static final Duration MAX_RECONNECT_DELAY = Duration.ofMinutes(1);
+
     private final URI emojiTrackerUrl;
     private final WebClient webClient;
+    private final Flux<EmojiUpdate> emojis;
 
-    public EmojiController(@Value("${emoji-tracker.url}") URI emojiTrackerUrl, WebClient webClient) {
+    public EmojiController(@Value("${emoji-tracker.url}") URI emojiTrackerUrl, @Qualifier("emojiWebClient") WebClient webClient) {
         this.emojiTrackerUrl = emojiTrackerUrl;
         this.webClient = webClient;
+        this.emojis = sharedUpstream();
+    }
+
+    /**
+     * Single connection to emoji tracker, shared by all endpoints and all their subscribers.
+     * Connects when the first subscriber arrives, disconnects when the last one leaves.
+     * Reconnects with exponential backoff when the tracker fails or closes the stream.
+     * Backoff starts over once events flow again, so a long-lived connection that eventually drops reconnects quickly.
+     *
+     * @see EmojiEventDecoder
+     */
+    private Flux<EmojiUpdate> sharedUpstream() {
+        return Flux
+                .defer(() -> {
+                    final EmojiEventDecoder decoder = new EmojiEventDecoder();
+                    return webClient
+                            .get()
+                            .uri(emojiTrackerUrl)
+                            .retrieve()
+                            .bodyToFlux(DataBuffer.class)
+                            .concatMapIterable(decoder::decode)
+                            .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+                })
+                .doOnSubscribe(s -> log.info("Connecting to {}", emojiTrackerUrl))
+                .repeatWhen(completed -> completed.delayElements(RECONNECT_DELAY))
+                .retryWhen(Retry
+                        .backoff(Long.MAX_VALUE, RECONNECT_DELAY)
+                        .maxBackoff(MAX_RECONNECT_DELAY)
+                        .transientErrors(true)
+                        .doBeforeRetry(signal -> log.warn("Reconnecting to {}", emojiTrackerUrl, signal.failure())))
+                .publish()
+                .refCount();
+    }
+
+    /**
+     * Every subscriber gets its own bounded buffer, so a slow one drops its oldest events
+     * instead of stalling the shared upstream for everybody else.
+     */
+    Flux<EmojiUpdate> emojis() {
+        return emojis.onBackpressureBuffer(
+                SUBSCRIBER_BUFFER_SIZE,
+                dropped -> log.debug("Slow subscriber, dropped {}", dropped),
+                BufferOverflowStrategy.DROP_OLDEST);
     }
 
     @GetMapping(value = "/emojis/raw", produces = TEXT_EVENT_STREAM_VALUE)
     Flux<ServerSentEvent> raw() {
-        return webClient
-                .get()
-                .uri(emojiTrackerUrl)
-                .retrieve()
-                .bodyToFlux(ServerSentEvent.class);
+        return emojis()
+                .<ServerSentEvent>map(event -> ServerSentEvent.builder(event.toMap()).build());
     }
 
     // Counts events per second
     @GetMapping(value = "/emojis/rps", produces = TEXT_EVENT_STREAM_VALUE)
     Flux<Long> rps() {
-        return webClient
-                .get()
-                .uri(emojiTrackerUrl)
-                .retrieve()
-                .bodyToFlux(ServerSentEvent.class)
+        return emojis()
                 .window(Duration.ofSeconds(1))
                 .flatMap(Flux::count);
     }
@@ -54,81 +99,110 @@ public class EmojiController {
     // Counts total emojis per second
     @GetMapping(value = "/emojis/eps", produces = TEXT_EVENT_STREAM_VALUE)
     Flux<Integer> eps() {
-        return webClient
-                .get()
-                .uri(emojiTrackerUrl)
-                .retrieve()
-                .bodyToFlux(new ParameterizedTypeReference<Map<String, Integer>>() {})
-                .flatMapIterable(Map::values)
+        return emojis()
+                .map(EmojiUpdate::total)
                 .window(Duration.ofSeconds(1))
                 .flatMap(window -> window.reduce(0, Integer::sum));
     }
 
-    @GetMapping(value = "/emojis/aggregated", produces = TEXT_EVENT_STREAM_VALUE)
     Flux<Map<String, Integer>> aggregated() {
-        return webClient
-                .get()
-                .uri(emojiTrackerUrl)
-                .retrieve()
-                .bodyToFlux(new ParameterizedTypeReference<Map<String, Integer>>() {})
-                .scan(new HashMap<>(), (acc, next) -> {
-                            next.forEach((emoji, count) -> acc.merge(emoji, count, Integer::sum));
-                            return acc;
+        return aggregated(0, Overflow.LATEST);
+    }
+
+    /**
+     * Counters are updated on every event, but a snapshot (a copy of all of them) is only taken once per period,
+     * and only if anything changed. Last change before a quiet period is therefore sent at the end of that period.
+     *
+     * @param intervalMillis snapshot period, <code>0</code> means a snapshot after every event
+     * @param overflow       what to do with snapshots when client is too slow, by default only the latest one is sent
+     */
+    @GetMapping(value = "/emojis/aggregated", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Map<String, Integer>> aggregated(
+            @RequestParam(defaultValue = "1000", required = false) long intervalMillis,
+            @RequestParam(defaultValue = "LATEST", required = false) Overflow overflow) {
+        return overflow.apply(Flux.defer(() -> {
+            final EmojiCounts counts = new EmojiCounts();
+            final Flux<EmojiUpdate> changes = emojis()
+                    .doOnNext(event -> {
+                        synchronized (counts) {
+                            for (int i = 0; i < event.size(); i++) {
+                                counts.add(event.code(i), event.count(i));
+                            }
                         }
-                );
+                    });
+            final Flux<EmojiUpdate> sampled = intervalMillis > 0 ?
+                    changes.sample(Duration.ofMillis(intervalMillis)) :
+                    changes;
+            return sampled
+                    .map(event -> {
+                        synchronized (counts) {
+                            return counts.snapshot();
+                        }
+                    })
+                    .startWith(counts.snapshot());
+        }));
+    }
+
+    Flux<Map<String, Integer>> top(int limit) {
+        return top(limit, Overflow.LATEST);
     }
 
     /**
-     * @see #topValues(Map, int)
+     * Emits only when the top actually changes, i.e. one of its members grew or a new one entered.
+     *
+     * @see TopK
      */
     @GetMapping(value = "/emojis/top", produces = TEXT_EVENT_STREAM_VALUE)
-    Flux<Map<String, Integer>> top(@RequestParam(defaultValue = "10", required = false) int limit) {
-        return aggregated()
-                .map(hashMap -> topValues(hashMap, limit))
-                .distinctUntilChanged(); // TODO: nice use case.
-//        return Flux.empty();
+    Flux<Map<String, Integer>> top(
+            @RequestParam(defaultValue = "10", required = false) int limit,
+            @RequestParam(defaultValue = "LATEST", required = false) Overflow overflow) {
+        return overflow.apply(topChanges(limit));
+    }
+
+    private Flux<Map<String, Integer>> topChanges(int limit) {
+        return Flux.defer(() -> {
+            final EmojiCounts counts = new EmojiCounts();
+            final TopK top = new TopK(limit);
+            return emojis()
+                    .<Map<String, Integer>>handle((event, sink) -> {
+                        boolean changed = false;
+                        for (int i = 0; i < event.size(); i++) {
+                            final long count = counts.add(event.code(i), event.count(i));
+                            changed |= top.update(event.code(i), count);
+                        }
+                        if (changed) {
+                            sink.next(top.snapshot());
+                        }
+                    })
+                    .startWith(top.snapshot());
+        });
     }
 
-    private <T> Map<T, Integer> topValues(Map<T, Integer> agg, int n) {
-        return new HashMap<>(agg
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(reverseOrder()))
-                .limit(n)
-                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    Flux<String> topStr(int limit) {
+        return topStr(limit, Overflow.LATEST);
     }
 
     @GetMapping(value = "/emojis/topStr", produces = TEXT_EVENT_STREAM_VALUE)
-    Flux<String> topStr(@RequestParam(defaultValue = "10", required = false) int limit) {
-        return top(limit)
+    Flux<String> topStr(
+            @RequestParam(defaultValue = "10", required = false) int limit,
+            @RequestParam(defaultValue = "LATEST", required = false) Overflow overflow) {
+        return overflow.apply(topChanges(limit)
                 .map(this::keysAsOneString)
-                .distinctUntilChanged();
+                .distinctUntilChanged());
     }
 
     String keysAsOneString(Map<String, Integer> m) {
-        return m
-            .keySet()
-            .stream()
-            .map(EmojiController::codeToEmoji)
-            .collect(Collectors.joining());
-    }
-
-    static String codeToEmoji(String hex) {
-        if (hex == null || hex.isBlank()) {
-            return "";
-        }
-        final String[] codes = hex.split("-");
-        if (codes.length == 2) {
-            return hexToEmoji(codes[0]) + hexToEmoji(codes[1]);
-        } else {
-            return hexToEmoji(hex);
+        final StringBuilder emojis = new StringBuilder();
+        for (String code : m.keySet()) {
+            emojis.append(codeToEmoji(code));
         }
+        return emojis.toString();
     }
 
-    private static String hexToEmoji(String hex) {
-        if (hex == null || hex.isBlank()) {
-            return "";
-        }
-        return new String(Character.toChars(Integer.parseInt(hex, 16)));
+    /**
+     * @see EmojiGlyphs
+     */
+    static String codeToEmoji(String hex) {
+        return EmojiGlyphs.of(hex);
     }
 }
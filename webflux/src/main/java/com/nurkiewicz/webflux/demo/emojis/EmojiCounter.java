@@ -1,18 +1,113 @@
 package com.nurkiewicz.webflux.demo.emojis;
 
+import java.time.Duration;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+/**
+ * Persists emoji counts from the live stream into Redis.
+ * <p>
+ * Increments are coalesced in memory per emoji and flushed as one atomic batch (see {@link EmojiRepository#incAll(Map)})
+ * every {@link #FLUSH_INTERVAL} or as soon as {@link #MAX_BATCH_SIZE} distinct emojis are pending.
+ * Only one flush is in flight at a time. While Redis is slow new increments keep coalescing
+ * into the same pending counters, so memory is bounded by the number of distinct emojis,
+ * not by the event rate. Failed batches are merged back and retried with the next flush.
+ * <p>
+ * Persisting needs every event, so once enabled (<code>emojis.persistence.enabled=true</code>) it keeps
+ * the shared tracker connection open for the whole lifetime of the application,
+ * regardless of clients. Disabled by default, then the connection is only open while somebody listens.
+ */
 @Component
 class EmojiCounter {
 
     private static final Logger log = LoggerFactory.getLogger(EmojiCounter.class);
 
+    private static final Duration FLUSH_INTERVAL = Duration.ofSeconds(1);
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final Duration SHUTDOWN_FLUSH_TIMEOUT = Duration.ofSeconds(5);
+
     private final EmojiRepository repository;
+    private final EmojiController emojiController;
+    private final boolean enabled;
+    private final EmojiCounts pending = new EmojiCounts();
+    private Disposable subscription;
 
-    EmojiCounter(EmojiRepository repository) {
+    EmojiCounter(
+            EmojiRepository repository,
+            EmojiController emojiController,
+            @Value("${emojis.persistence.enabled:false}") boolean enabled) {
         this.repository = repository;
+        this.emojiController = emojiController;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("Persisting emoji counts disabled");
+            return;
+        }
+        final Flux<Long> batchFull = emojiController
+                .emojis()
+                .filter(this::addPending)
+                .map(event -> 0L);
+        subscription = Flux
+                .merge(batchFull, Flux.interval(FLUSH_INTERVAL))
+                .onBackpressureDrop()
+                .concatMap(trigger -> flush(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (subscription == null) {
+            return;
+        }
+        subscription.dispose();
+        flush()
+                .timeout(SHUTDOWN_FLUSH_TIMEOUT, Mono.empty())
+                .block();
+    }
+
+    /**
+     * @return <code>true</code> if batch is full and should be flushed right away
+     */
+    private boolean addPending(EmojiUpdate event) {
+        synchronized (pending) {
+            for (int i = 0; i < event.size(); i++) {
+                pending.add(event.code(i), event.count(i));
+            }
+            return pending.size() >= MAX_BATCH_SIZE;
+        }
+    }
+
+    private Mono<Void> flush() {
+        return Mono.defer(() -> {
+            final Map<String, Long> batch;
+            synchronized (pending) {
+                batch = pending.drain();
+            }
+            return repository
+                    .incAll(batch)
+                    .doOnSuccess(v -> log.debug("Flushed {} emojis", batch.size()))
+                    .onErrorResume(e -> {
+                        log.warn("Failed to flush {} emojis, will retry", batch.size(), e);
+                        synchronized (pending) {
+                            batch.forEach(pending::add);
+                        }
+                        return Mono.empty();
+                    });
+        });
     }
 
 }
@@ -0,0 +1,137 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Open-addressing <code>String -&gt; long</code> map of emoji counters.
+ * <p>
+ * Keys and values live in parallel arrays with linear probing, so incrementing a counter
+ * neither boxes nor allocates (apart from occasional resize). Not thread safe, meant to be
+ * owned by a single subscriber. Observers only ever get immutable {@link #snapshot()}s.
+ * <p>
+ * Optionally every counter remembers the version (e.g. event sequence number) of its last change,
+ * see {@link #changedSince(long)}.
+ */
+class EmojiCounts {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String[] keys;
+    private long[] values;
+    private long[] versions;
+    private int size;
+
+    EmojiCounts() {
+        keys = new String[INITIAL_CAPACITY];
+        values = new long[INITIAL_CAPACITY];
+        versions = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return new value of the counter
+     */
+    long add(String emoji, long delta) {
+        return add(emoji, delta, 0);
+    }
+
+    /**
+     * @param version recorded as the last change of this counter
+     * @return new value of the counter
+     */
+    long add(String emoji, long delta, long version) {
+        final int slot = slotOf(emoji);
+        versions[slot] = version;
+        if (keys[slot] == null) {
+            keys[slot] = emoji;
+            values[slot] = delta;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+            return delta;
+        }
+        return values[slot] += delta;
+    }
+
+    long get(String emoji) {
+        final int slot = slotOf(emoji);
+        return keys[slot] == null ? 0 : values[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    Map<String, Integer> snapshot() {
+        final Map<String, Integer> snapshot = new HashMap<>(size * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                snapshot.put(keys[i], TopK.saturatedInt(values[i]));
+            }
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * @return counters whose last change has version greater than <code>version</code>
+     */
+    Map<String, Integer> changedSince(long version) {
+        final Map<String, Integer> changed = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && versions[i] > version) {
+                changed.put(keys[i], TopK.saturatedInt(values[i]));
+            }
+        }
+        return Collections.unmodifiableMap(changed);
+    }
+
+    /**
+     * @return all non-zero counters, leaving this instance empty
+     */
+    Map<String, Long> drain() {
+        final Map<String, Long> drained = new HashMap<>(size * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && values[i] != 0) {
+                drained.put(keys[i], values[i]);
+            }
+        }
+        Arrays.fill(keys, null);
+        Arrays.fill(values, 0);
+        Arrays.fill(versions, 0);
+        size = 0;
+        return drained;
+    }
+
+    private int slotOf(String emoji) {
+        final int mask = keys.length - 1;
+        int slot = spread(emoji.hashCode()) & mask;
+        while (keys[slot] != null && !keys[slot].equals(emoji)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        final String[] oldKeys = keys;
+        final long[] oldValues = values;
+        final long[] oldVersions = versions;
+        keys = new String[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        versions = new long[oldVersions.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                final int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                versions[slot] = oldVersions[i];
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Incremental decoder of emoji tracker's SSE stream, straight from network buffers.
+ * <p>
+ * Splits incoming bytes into lines (buffers may end in the middle of a line),
+ * then parses every <code>data:{"1F606":1,"1F60E":2}</code> line into {@link EmojiUpdate}
+ * without building intermediate maps. Codes seen before are looked up by their bytes,
+ * so no {@link String} is created for them. Other SSE fields are ignored.
+ * <p>
+ * Stateful, so one instance per connection.
+ */
+class EmojiEventDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(EmojiEventDecoder.class);
+
+    private static final byte[] DATA = "data:".getBytes(US_ASCII);
+    private static final int MAX_CACHED_CODES = 4096;
+    private static final int MAX_CODES_PER_EVENT = 256;
+
+    private byte[] line = new byte[512];
+    private int lineLength;
+
+    private byte[][] cachedBytes = new byte[1024][];
+    private String[] cachedCodes = new String[1024];
+    private int cachedCount;
+
+    private final String[] codes = new String[MAX_CODES_PER_EVENT];
+    private final int[] counts = new int[MAX_CODES_PER_EVENT];
+    private int pos;
+
+    /**
+     * Consumes and releases <code>buffer</code>.
+     *
+     * @return all events completed by this buffer, possibly none
+     */
+    List<EmojiUpdate> decode(DataBuffer buffer) {
+        try {
+            List<EmojiUpdate> events = List.of();
+            final int end = buffer.writePosition();
+            for (int i = buffer.readPosition(); i < end; i++) {
+                final byte b = buffer.getByte(i);
+                if (b == '\n' || b == '\r') {
+                    final EmojiUpdate event = completeLine();
+                    if (event != null) {
+                        if (events.isEmpty()) {
+                            events = new ArrayList<>(2);
+                        }
+                        events.add(event);
+                    }
+                } else {
+                    append(b);
+                }
+            }
+            return events;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private void append(byte b) {
+        if (lineLength == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[lineLength++] = b;
+    }
+
+    private EmojiUpdate completeLine() {
+        try {
+            return isData() ? parseData() : null;
+        } catch (IllegalArgumentException e) {
+            log.warn("Skipping malformed event '{}'", new String(line, 0, lineLength, US_ASCII), e);
+            return null;
+        } finally {
+            lineLength = 0;
+        }
+    }
+
+    private boolean isData() {
+        if (lineLength < DATA.length) {
+            return false;
+        }
+        for (int i = 0; i < DATA.length; i++) {
+            if (line[i] != DATA[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses flat JSON object of <code>"code":count</code> pairs
+     */
+    private EmojiUpdate parseData() {
+        pos = DATA.length;
+        expect('{');
+        int size = 0;
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                if (size == MAX_CODES_PER_EVENT) {
+                    throw new IllegalArgumentException("More than " + MAX_CODES_PER_EVENT + " codes");
+                }
+                codes[size] = parseCode();
+                expect(':');
+                counts[size] = parseCount();
+                size++;
+                final byte separator = next();
+                if (separator == '}') {
+                    break;
+                }
+                if (separator != ',') {
+                    throw new IllegalArgumentException("Expected ',' or '}' at " + (pos - 1));
+                }
+            }
+        }
+        return new EmojiUpdate(Arrays.copyOf(codes, size), Arrays.copyOf(counts, size));
+    }
+
+    private String parseCode() {
+        expect('"');
+        final int start = pos;
+        while (pos < lineLength && line[pos] != '"') {
+            pos++;
+        }
+        if (pos == lineLength) {
+            throw new IllegalArgumentException("Unterminated code");
+        }
+        final String code = intern(start, pos);
+        pos++;
+        return code;
+    }
+
+    private int parseCount() {
+        skipWhitespace();
+        final boolean negative = pos < lineLength && line[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        final int start = pos;
+        int count = 0;
+        while (pos < lineLength && line[pos] >= '0' && line[pos] <= '9') {
+            count = count * 10 + (line[pos++] - '0');
+        }
+        if (pos == start) {
+            throw new IllegalArgumentException("Expected number at " + pos);
+        }
+        return negative ? -count : count;
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at " + (pos - 1));
+        }
+    }
+
+    private byte next() {
+        final byte b = peek();
+        pos++;
+        return b;
+    }
+
+    private byte peek() {
+        skipWhitespace();
+        if (pos >= lineLength) {
+            throw new IllegalArgumentException("Unexpected end of event");
+        }
+        return line[pos];
+    }
+
+    private void skipWhitespace() {
+        while (pos < lineLength && (line[pos] == ' ' || line[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    private String intern(int from, int to) {
+        final int mask = cachedBytes.length - 1;
+        int slot = hash(line, from, to) & mask;
+        while (cachedBytes[slot] != null) {
+            if (Arrays.equals(cachedBytes[slot], 0, cachedBytes[slot].length, line, from, to)) {
+                return cachedCodes[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        final String code = new String(line, from, to - from, US_ASCII);
+        if (cachedCount < MAX_CACHED_CODES) {
+            cachedBytes[slot] = Arrays.copyOfRange(line, from, to);
+            cachedCodes[slot] = code;
+            if (++cachedCount * 2 > cachedBytes.length) {
+                rehash();
+            }
+        }
+        return code;
+    }
+
+    private void rehash() {
+        final byte[][] oldBytes = cachedBytes;
+        final String[] oldCodes = cachedCodes;
+        cachedBytes = new byte[oldBytes.length * 2][];
+        cachedCodes = new String[oldCodes.length * 2];
+        final int mask = cachedBytes.length - 1;
+        for (int i = 0; i < oldBytes.length; i++) {
+            if (oldBytes[i] != null) {
+                int slot = hash(oldBytes[i], 0, oldBytes[i].length) & mask;
+                while (cachedBytes[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                cachedBytes[slot] = oldBytes[i];
+                cachedCodes[slot] = oldCodes[i];
+            }
+        }
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+}
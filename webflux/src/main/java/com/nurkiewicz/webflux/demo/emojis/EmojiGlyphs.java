@@ -0,0 +1,57 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders tracker codes like <code>1F606</code> or <code>0023-20E3</code> into emoji strings.
+ * <p>
+ * Rendering is done once per distinct code and cached, so repeated lookups
+ * return the same {@link String} instance without parsing or allocating.
+ * The cache is bounded, codes beyond {@link #MAX_CACHED} are rendered on every call.
+ */
+final class EmojiGlyphs {
+
+    static final int MAX_CACHED = 8192;
+
+    private static final ConcurrentMap<String, String> cache = new ConcurrentHashMap<>();
+
+    private EmojiGlyphs() {
+    }
+
+    static String of(String code) {
+        if (code == null || code.isBlank()) {
+            return "";
+        }
+        final String cached = cache.get(code);
+        if (cached != null) {
+            return cached;
+        }
+        final String glyph = render(code);
+        if (cache.size() < MAX_CACHED) {
+            final String previous = cache.putIfAbsent(code, glyph);
+            return previous != null ? previous : glyph;
+        }
+        return glyph;
+    }
+
+    /**
+     * Any number of <code>-</code>-separated hex code points, e.g. <code>1F468-200D-1F469-200D-1F467</code>
+     */
+    private static String render(String code) {
+        final StringBuilder glyph = new StringBuilder(4);
+        int from = 0;
+        while (from <= code.length()) {
+            int to = code.indexOf('-', from);
+            if (to < 0) {
+                to = code.length();
+            }
+            if (to > from) {
+                glyph.appendCodePoint(Integer.parseInt(code, from, to, 16));
+            }
+            from = to + 1;
+        }
+        return glyph.toString();
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Ingests the shared emoji stream once into {@link SlidingCounters}
+ * and publishes rates of every window once per second, shared by all subscribers.
+ * <p>
+ * Ingestion runs only while somebody watches any of the windows, so when nobody listens
+ * the shared tracker connection is closed, like for every other emoji endpoint.
+ * Rates right after the first subscriber arrives only cover the time since.
+ */
+@Component
+class EmojiRates {
+
+    private final SlidingCounters counters = new SlidingCounters(nowSecond());
+    private final Flux<Map<String, Double>> ingestion;
+    private final Map<Integer, Flux<Map<String, Double>>> rates;
+
+    EmojiRates(EmojiController emojiController) {
+        this.ingestion = emojiController
+                .emojis()
+                .doOnNext(this::add)
+                .<Map<String, Double>>handle((event, sink) -> {})
+                .share();
+        this.rates = Arrays
+                .stream(SlidingCounters.WINDOWS)
+                .boxed()
+                .collect(toMap(window -> window, this::ratesEverySecond));
+    }
+
+    /**
+     * @param window one of {@link SlidingCounters#WINDOWS}
+     */
+    Flux<Map<String, Double>> rates(int window) {
+        return rates.get(window);
+    }
+
+    private Flux<Map<String, Double>> ratesEverySecond(int window) {
+        return Flux
+                .interval(Duration.ofSeconds(1))
+                .map(tick -> {
+                    synchronized (counters) {
+                        return counters.rates(window, nowSecond());
+                    }
+                })
+                .mergeWith(ingestion)
+                .share();
+    }
+
+    private void add(EmojiUpdate event) {
+        final long now = nowSecond();
+        synchronized (counters) {
+            for (int i = 0; i < event.size(); i++) {
+                counters.add(event.code(i), event.count(i), now);
+            }
+        }
+    }
+
+    private static long nowSecond() {
+        return Instant.now().getEpochSecond();
+    }
+
+}
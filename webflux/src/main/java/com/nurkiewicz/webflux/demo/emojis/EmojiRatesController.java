@@ -0,0 +1,64 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import static java.util.stream.Collectors.toMap;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
+
+@RestController
+public class EmojiRatesController {
+
+    private final EmojiRates emojiRates;
+
+    EmojiRatesController(EmojiRates emojiRates) {
+        this.emojiRates = emojiRates;
+    }
+
+    /**
+     * Every second: average occurrences per second of each emoji, over sliding window
+     *
+     * @param window in seconds: 1, 10 or 60
+     */
+    @GetMapping(value = "/emojis/rates", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Map<String, Double>> rates(
+            @RequestParam(defaultValue = "10", required = false) int window,
+            @RequestParam(defaultValue = "LATEST", required = false) Overflow overflow) {
+        return overflow.apply(ratesOf(window));
+    }
+
+    /**
+     * Every second: fastest growing emojis over sliding window, with their rates, fastest first
+     */
+    @GetMapping(value = "/emojis/trending", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Map<String, Double>> trending(
+            @RequestParam(defaultValue = "60", required = false) int window,
+            @RequestParam(defaultValue = "10", required = false) int limit,
+            @RequestParam(defaultValue = "LATEST", required = false) Overflow overflow) {
+        return overflow.apply(ratesOf(window)
+                .<Map<String, Double>>map(rates -> rates
+                        .entrySet()
+                        .stream()
+                        .filter(e -> e.getValue() > 0)
+                        .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                        .limit(limit)
+                        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new)))
+                .distinctUntilChanged());
+    }
+
+    private Flux<Map<String, Double>> ratesOf(int window) {
+        if (!SlidingCounters.isSupported(window)) {
+            return Flux.error(new ResponseStatusException(BAD_REQUEST, "Unsupported window " + window));
+        }
+        return emojiRates.rates(window);
+    }
+
+}
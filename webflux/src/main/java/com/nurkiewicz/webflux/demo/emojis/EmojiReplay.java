@@ -0,0 +1,104 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Recorded tracker events, pre-serialised once into SSE frames (<code>data:{...}\n\n</code>)
+ * in a single byte array. Replaying is just slicing that array, no parsing or copying.
+ */
+class EmojiReplay {
+
+    private static final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    private final byte[] frames;
+    private final int[] offsets;
+
+    private EmojiReplay(byte[] frames, int[] offsets) {
+        this.frames = frames;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @param resource classpath resource with one JSON event per line
+     */
+    static EmojiReplay load(String resource) {
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        final List<Integer> offsets = new ArrayList<>();
+        try (InputStream inputStream = EmojiReplay.class.getResourceAsStream(resource)) {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    offsets.add(frames.size());
+                    frames.writeBytes(("data:" + line + "\n\n").getBytes(UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        offsets.add(frames.size());
+        return new EmojiReplay(frames.toByteArray(), offsets.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Endless replay, looping over recorded events.
+     * Every <code>burst / rate</code> seconds emits <code>burst</code> consecutive events
+     * (one buffer per contiguous run of recorded events), starting after half of that period.
+     * Ticks are dropped if the subscriber cannot keep up.
+     *
+     * @param rate  events per second, <code>0</code> means as fast as the subscriber requests
+     * @param burst events per tick
+     */
+    Flux<DataBuffer> replay(int rate, int burst) {
+        return Flux.defer(() -> {
+            final int[] cursor = {0};
+            if (rate <= 0) {
+                return Flux.<List<DataBuffer>>generate(sink -> sink.next(next(cursor, burst)))
+                        .concatMapIterable(buffers -> buffers);
+            }
+            final Duration period = Duration.ofNanos(1_000_000_000L * burst / rate);
+            return Flux
+                    .interval(period.dividedBy(2), period)
+                    .onBackpressureDrop()
+                    .concatMapIterable(tick -> next(cursor, burst));
+        });
+    }
+
+    private List<DataBuffer> next(int[] cursor, int count) {
+        final List<DataBuffer> buffers = new ArrayList<>(2);
+        int remaining = count;
+        while (remaining > 0) {
+            final int from = cursor[0];
+            final int to = Math.min(from + remaining, size());
+            buffers.add(slice(from, to));
+            remaining -= to - from;
+            cursor[0] = to == size() ? 0 : to;
+        }
+        return buffers;
+    }
+
+    private DataBuffer slice(int fromEvent, int toEvent) {
+        final int start = offsets[fromEvent];
+        return bufferFactory.wrap(ByteBuffer.wrap(frames, start, offsets[toEvent] - start).slice());
+    }
+
+}
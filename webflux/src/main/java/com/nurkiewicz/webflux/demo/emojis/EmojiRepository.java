@@ -1,24 +1,61 @@
 package com.nurkiewicz.webflux.demo.emojis;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.redis.core.ReactiveHashOperations;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
 @Component
 class EmojiRepository {
 
+    static final String KEY = "emojis";
+
+    /**
+     * <code>HINCRBY</code> of every <code>field, increment</code> pair in <code>ARGV</code>
+     */
+    private static final RedisScript<Long> INC_ALL = RedisScript.of(
+            "for i = 1, #ARGV, 2 do redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1]) end return #ARGV / 2",
+            Long.class);
+
     private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final ReactiveHashOperations<String, String, String> counters;
 
     public EmojiRepository(ReactiveRedisTemplate<String, String> redisTemplate) {
         this.redisTemplate = redisTemplate;
+        this.counters = redisTemplate.opsForHash();
     }
 
     Mono<Long> inc(String emoji, long by) {
-        return Mono.empty();
+        return counters.increment(KEY, emoji, by);
+    }
+
+    /**
+     * Applies the whole batch with a single Lua script: one command, one round-trip,
+     * and Redis runs it atomically, so the batch is either applied completely or not at all.
+     * Caller can safely retry a failed batch without counting part of it twice
+     * (unless the connection drops after Redis executed the script, but before the reply arrived).
+     */
+    Mono<Void> incAll(Map<String, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return Mono.empty();
+        }
+        final List<String> args = new ArrayList<>(deltas.size() * 2);
+        deltas.forEach((emoji, delta) -> {
+            args.add(emoji);
+            args.add(Long.toString(delta));
+        });
+        return redisTemplate
+                .execute(INC_ALL, List.of(KEY), args)
+                .then();
     }
 
     Mono<String> get(String emoji) {
-        return Mono.empty();
+        return counters.get(KEY, emoji);
     }
 
 }
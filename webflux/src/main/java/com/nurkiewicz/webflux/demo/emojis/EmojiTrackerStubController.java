@@ -1,58 +1,50 @@
 package com.nurkiewicz.webflux.demo.emojis;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.time.Duration;
-import java.util.Map;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import reactor.core.publisher.Flux;
-import reactor.util.function.Tuple2;
 
-import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
 @RestController
 public class EmojiTrackerStubController {
 
-	private final ObjectMapper objectMapper = new ObjectMapper();
+	static final int DEFAULT_RATE = 5;
+	static final int DEFAULT_BURST = 5;
 
-	private BufferedReader openFile(String file) {
-		return new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(file), UTF_8));
+	/**
+	 * Parsed once, shared by all instances
+	 */
+	private static class Recording {
+		static final EmojiReplay EMOJIS = EmojiReplay.load("/emojis.txt");
 	}
 
+	/**
+	 * Replays <code>emojis.txt</code> in a loop. By default 5 events per second, like the real tracker.
+	 *
+	 * @param rate     events per second, <code>0</code> for as fast as the client can read
+	 * @param burst    events written at once, every <code>burst / rate</code> seconds
+	 * @param duration seconds after which the stream completes, <code>0</code> for endless
+	 */
 	@GetMapping(value = "/subscribe/eps", produces = TEXT_EVENT_STREAM_VALUE)
-	Flux<ServerSentEvent> emojis() {
-		return stubSseStream();
+	Flux<DataBuffer> emojis(
+			@RequestParam(defaultValue = "" + DEFAULT_RATE, required = false) int rate,
+			@RequestParam(defaultValue = "" + DEFAULT_BURST, required = false) int burst,
+			@RequestParam(defaultValue = "0", required = false) int duration) {
+		final Flux<DataBuffer> replay = Recording.EMOJIS.replay(rate, Math.max(1, burst));
+		return duration > 0 ? replay.take(Duration.ofSeconds(duration)) : replay;
 	}
 
-	Flux<ServerSentEvent> stubSseStream() {
-		return stubMapStream()
-				.map(ServerSentEvent::builder)
-				.map(ServerSentEvent.Builder::build);
-	}
-
-	Flux<Map> stubMapStream() {
-		return Flux
-				.fromStream(() -> openFile("/emojis.txt").lines())
-				.map(this::toJson)
-				.repeat()
-				.buffer(5)
-				.zipWith(Flux.interval(Duration.ofMillis(500), Duration.ofSeconds(1)))
-				.concatMapIterable(Tuple2::getT1);
-	}
-
-	private Map toJson(String s) {
-		try {
-			return objectMapper.readValue(s, Map.class);
-		} catch (JsonProcessingException e) {
-			throw new RuntimeException(e);
-		}
+	/**
+	 * Raw bytes of SSE stream, as received by <code>WebClient</code>
+	 */
+	Flux<DataBuffer> stubByteStream() {
+		return Recording.EMOJIS.replay(DEFAULT_RATE, DEFAULT_BURST);
 	}
 
 }
@@ -0,0 +1,52 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Single event from emoji tracker, e.g. <code>{"1F606":1,"1F60E":2}</code>,
+ * kept as parallel arrays of codes and counts rather than a boxed map.
+ */
+class EmojiUpdate {
+
+    private final String[] codes;
+    private final int[] counts;
+
+    EmojiUpdate(String[] codes, int[] counts) {
+        this.codes = codes;
+        this.counts = counts;
+    }
+
+    int size() {
+        return codes.length;
+    }
+
+    String code(int i) {
+        return codes[i];
+    }
+
+    int count(int i) {
+        return counts[i];
+    }
+
+    int total() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    Map<String, Integer> toMap() {
+        final Map<String, Integer> map = new LinkedHashMap<>();
+        for (int i = 0; i < codes.length; i++) {
+            map.merge(codes[i], counts[i], Integer::sum);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,55 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+
+/**
+ * What to do with values a slow SSE client cannot keep up with.
+ * Applied at the very end of a per-client pipeline, so it only affects that client:
+ * the pipeline itself keeps consuming the shared upstream at full speed.
+ */
+public enum Overflow {
+
+    /**
+     * Conflate: keep only the most recent value and send it once the socket becomes writable.
+     * Best for snapshot streams, where each value supersedes all previous ones.
+     */
+    LATEST {
+        @Override
+        <T> Flux<T> apply(Flux<T> values) {
+            return values.onBackpressureLatest();
+        }
+    },
+
+    /**
+     * Discard every value produced while the client is not ready.
+     */
+    DROP {
+        @Override
+        <T> Flux<T> apply(Flux<T> values) {
+            return values.onBackpressureDrop(dropped -> log.debug("Slow client, dropped {}", dropped));
+        }
+    },
+
+    /**
+     * Keep up to {@link #BUFFER_SIZE} values, dropping the oldest ones beyond that.
+     */
+    BUFFER {
+        @Override
+        <T> Flux<T> apply(Flux<T> values) {
+            return values.onBackpressureBuffer(
+                    BUFFER_SIZE,
+                    dropped -> log.debug("Slow client, dropped {}", dropped),
+                    BufferOverflowStrategy.DROP_OLDEST);
+        }
+    };
+
+    static final int BUFFER_SIZE = 256;
+
+    private static final Logger log = LoggerFactory.getLogger(Overflow.class);
+
+    abstract <T> Flux<T> apply(Flux<T> values);
+
+}
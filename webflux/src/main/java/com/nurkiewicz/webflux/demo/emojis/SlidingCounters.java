@@ -0,0 +1,119 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-emoji counts over sliding windows of last 1, 10 and 60 complete seconds.
+ * <p>
+ * Every emoji owns a ring of one-second slots in a single <code>long[]</code>. Running sums for each window
+ * are updated once per second when a slot completes (add the completed second, subtract the one that fell out),
+ * so reading a rate is <code>O(1)</code> per emoji, no matter how long the window is.
+ * Time is passed explicitly, in epoch seconds. Not thread safe.
+ */
+class SlidingCounters {
+
+    static final int[] WINDOWS = {1, 10, 60};
+
+    private static final int SLOTS = 61;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] codes = new String[256];
+    private long[] slots = new long[codes.length * SLOTS];
+    private final long[][] sums = new long[WINDOWS.length][codes.length];
+    private long currentSecond;
+
+    SlidingCounters(long nowSecond) {
+        this.currentSecond = nowSecond;
+    }
+
+    void add(String code, int count, long nowSecond) {
+        advanceTo(nowSecond);
+        slots[idOf(code) * SLOTS + slot(currentSecond)] += count;
+    }
+
+    /**
+     * @param window one of {@link #WINDOWS}
+     * @return average number of occurrences per second of every emoji seen so far, over the last <code>window</code> complete seconds
+     */
+    Map<String, Double> rates(int window, long nowSecond) {
+        advanceTo(nowSecond);
+        final long[] sum = sums[windowIndex(window)];
+        final Map<String, Double> rates = new HashMap<>(ids.size() * 2);
+        for (int id = 0; id < ids.size(); id++) {
+            rates.put(codes[id], (double) sum[id] / window);
+        }
+        return rates;
+    }
+
+    static boolean isSupported(int window) {
+        return Arrays.stream(WINDOWS).anyMatch(w -> w == window);
+    }
+
+    private void advanceTo(long nowSecond) {
+        if (nowSecond - currentSecond > SLOTS) {
+            Arrays.fill(slots, 0);
+            for (long[] sum : sums) {
+                Arrays.fill(sum, 0);
+            }
+            currentSecond = nowSecond;
+            return;
+        }
+        while (currentSecond < nowSecond) {
+            completeSecond();
+        }
+    }
+
+    private void completeSecond() {
+        final int completed = slot(currentSecond);
+        for (int w = 0; w < WINDOWS.length; w++) {
+            final int expired = slot(currentSecond - WINDOWS[w]);
+            final long[] sum = sums[w];
+            for (int id = 0; id < ids.size(); id++) {
+                sum[id] += slots[id * SLOTS + completed] - slots[id * SLOTS + expired];
+            }
+        }
+        currentSecond++;
+        final int next = slot(currentSecond);
+        for (int id = 0; id < ids.size(); id++) {
+            slots[id * SLOTS + next] = 0;
+        }
+    }
+
+    private int idOf(String code) {
+        final Integer id = ids.get(code);
+        if (id != null) {
+            return id;
+        }
+        final int newId = ids.size();
+        if (newId == codes.length) {
+            grow();
+        }
+        codes[newId] = code;
+        ids.put(code, newId);
+        return newId;
+    }
+
+    private void grow() {
+        codes = Arrays.copyOf(codes, codes.length * 2);
+        slots = Arrays.copyOf(slots, codes.length * SLOTS);
+        for (int w = 0; w < WINDOWS.length; w++) {
+            sums[w] = Arrays.copyOf(sums[w], codes.length);
+        }
+    }
+
+    private static int slot(long second) {
+        return (int) Math.floorMod(second, SLOTS);
+    }
+
+    private static int windowIndex(int window) {
+        for (int w = 0; w < WINDOWS.length; w++) {
+            if (WINDOWS[w] == window) {
+                return w;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported window " + window + "s, expected one of " + Arrays.toString(WINDOWS));
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Incrementally maintained top <code>k</code> of ever-growing counters.
+ * <p>
+ * Counters never decrease, so a key outside of the top can only enter it through its own increment,
+ * pushing out the current minimum. Thus every update costs <code>O(log k)</code>,
+ * no matter how many distinct keys were seen. Not thread safe.
+ */
+class TopK {
+
+    private static final Comparator<Entry> BY_COUNT = Comparator
+            .comparingLong((Entry e) -> e.count)
+            .thenComparing(e -> e.key);
+
+    private final int k;
+    private final TreeSet<Entry> ranking = new TreeSet<>(BY_COUNT);
+    private final Map<String, Entry> members = new HashMap<>();
+
+    TopK(int k) {
+        this.k = k;
+    }
+
+    /**
+     * @param key   counter that changed
+     * @param count new total of that counter
+     * @return <code>true</code> if the top changed (either <code>key</code> entered it or was already there and grew)
+     */
+    boolean update(String key, long count) {
+        final Entry member = members.get(key);
+        if (member != null) {
+            if (member.count == count) {
+                return false;
+            }
+            ranking.remove(member);
+            member.count = count;
+            ranking.add(member);
+            return true;
+        }
+        if (k <= 0) {
+            return false;
+        }
+        if (ranking.size() == k) {
+            final Entry min = ranking.first();
+            if (count <= min.count) {
+                return false;
+            }
+            ranking.pollFirst();
+            members.remove(min.key);
+        }
+        final Entry entry = new Entry(key, count);
+        ranking.add(entry);
+        members.put(key, entry);
+        return true;
+    }
+
+    Map<String, Integer> snapshot() {
+        final Map<String, Integer> snapshot = new HashMap<>();
+        for (Entry entry : ranking) {
+            snapshot.put(entry.key, saturatedInt(entry.count));
+        }
+        return snapshot;
+    }
+
+    static int saturatedInt(long count) {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    private static class Entry {
+        private final String key;
+        private long count;
+
+        Entry(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+
+}
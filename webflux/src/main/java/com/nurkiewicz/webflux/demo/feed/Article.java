@@ -2,6 +2,8 @@ package com.nurkiewicz.webflux.demo.feed;
 
 import com.rometools.rome.feed.synd.SyndEntry;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.IndexDirection;
+import org.springframework.data.mongodb.core.index.Indexed;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
@@ -13,6 +15,7 @@ public class Article {
     @Id
     private final URI link;
 
+    @Indexed(direction = IndexDirection.DESCENDING)
     private final Instant publishedDate;
     private final String title;
 
@@ -0,0 +1,156 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import com.mongodb.MongoCommandException;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Articles inserted by any instance, tailed from Mongo change stream of the article collection.
+ * <p>
+ * Resume token of the last article handed over to subscribers is persisted (per node) every {@link #CHECKPOINT_INTERVAL}
+ * and once more when the stream stops, so a restarted node continues where it stopped without missing anything (at-least-once).
+ * Articles emitted after the last checkpoint before a crash are emitted once more after restart.
+ * Writing position per event would double the write load and cap throughput at one round trip per article.
+ * Requires Mongo running as a replica set.
+ */
+@Component
+public class ArticleChangeStream {
+
+    private static final Logger log = LoggerFactory.getLogger(ArticleChangeStream.class);
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(1);
+
+    static final Duration CHECKPOINT_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * ChangeStreamHistoryLost, ChangeStreamFatalError: resume token is too old or otherwise unusable
+     */
+    private static final Set<Integer> HISTORY_LOST = Set.of(286, 280);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final String node;
+    private final AtomicReference<BsonValue> position = new AtomicReference<>();
+    private volatile BsonValue checkpointed;
+    private final Flux<Article> newArticles;
+
+    public ArticleChangeStream(
+            ReactiveMongoTemplate mongoTemplate,
+            @Value("${articles.change-stream.node-id:${HOSTNAME:local}}") String node
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.node = node;
+        this.newArticles = Flux
+                .defer(this::tail)
+                .retryWhen(Retry
+                        .backoff(Long.MAX_VALUE, RETRY_DELAY)
+                        .maxBackoff(MAX_RETRY_DELAY)
+                        .transientErrors(true)
+                        .doBeforeRetry(signal -> log.warn("Change stream failed, resuming", signal.failure())))
+                .publish()
+                .refCount();
+    }
+
+    /**
+     * Hot, shared by all subscribers. Single change stream cursor is open as long as anyone subscribes.
+     */
+    public Flux<Article> newArticles() {
+        return newArticles;
+    }
+
+    private Flux<Article> tail() {
+        return resumeToken()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(token -> listen(token.orElse(null))
+                        .onErrorResume(e -> token.isPresent() && isHistoryLost(e), e -> {
+                            log.warn("Unable to resume change stream from {}, starting from now: {}", token.get(), e.toString());
+                            position.set(null);
+                            return listen(null);
+                        }));
+    }
+
+    private Flux<Article> listen(BsonValue token) {
+        final ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions
+                .builder()
+                .filter(newAggregation(match(where("operationType").is("insert"))));
+        if (token != null) {
+            options.resumeAfter(token);
+        }
+        final Flux<Article> articles = mongoTemplate
+                .changeStream(null, mongoTemplate.getCollectionName(Article.class), options.build(), Article.class)
+                .doOnSubscribe(s -> log.info("Tailing article changes for node {}, resuming after {}", node, token))
+                .handle((event, sink) -> {
+                    final Article article = event.getBody();
+                    if (article != null) {
+                        sink.next(article);
+                    }
+                    position.set(event.getResumeToken());
+                });
+        return Flux.using(
+                () -> Flux
+                        .interval(CHECKPOINT_INTERVAL)
+                        .onBackpressureDrop()
+                        .concatMap(tick -> checkpoint())
+                        .subscribe(),
+                checkpoints -> articles,
+                checkpoints -> {
+                    checkpoints.dispose();
+                    checkpoint().subscribe();
+                });
+    }
+
+    /**
+     * Persists {@link #position} unless already persisted. Failure is only logged, next checkpoint covers it.
+     */
+    private Mono<Void> checkpoint() {
+        final BsonValue token = position.get();
+        if (token == null || token.equals(checkpointed)) {
+            return Mono.empty();
+        }
+        return mongoTemplate
+                .save(new StreamPosition(node, token.asDocument().toJson()))
+                .doOnSuccess(saved -> checkpointed = token)
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Unable to save change stream position of node {}: {}", node, e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Last token seen by this process, or persisted one after restart
+     */
+    private Mono<BsonValue> resumeToken() {
+        final BsonValue current = position.get();
+        if (current != null) {
+            return Mono.just(current);
+        }
+        return mongoTemplate
+                .findById(node, StreamPosition.class)
+                .map(saved -> BsonDocument.parse(saved.getResumeToken()));
+    }
+
+    private boolean isHistoryLost(Throwable e) {
+        return e instanceof MongoCommandException && HISTORY_LOST.contains(((MongoCommandException) e).getErrorCode());
+    }
+
+}
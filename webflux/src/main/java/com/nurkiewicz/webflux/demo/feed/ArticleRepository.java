@@ -1,8 +1,16 @@
 package com.nurkiewicz.webflux.demo.feed;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
 
 import java.net.URI;
 
 public interface ArticleRepository extends ReactiveMongoRepository<Article, URI> {
+
+    /**
+     * Walks descending index on <code>publishedDate</code>, reading only <code>pageable.getPageSize()</code> documents
+     */
+    Flux<Article> findAllByOrderByPublishedDateDesc(Pageable pageable);
+
 }
@@ -0,0 +1,73 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores many articles in a single unordered bulk write.
+ * Every article is an upsert keyed on {@link Article#getLink()} that only sets fields on insert,
+ * so writing the same article twice (e.g. after a failed cycle, or from another instance) is harmless
+ * and no <code>existsById</code> check is needed upfront.
+ */
+@Component
+public class ArticleWriter {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public ArticleWriter(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * @return articles that did not exist before, in no particular order
+     */
+    public Flux<Article> upsert(Collection<Article> articles) {
+        if (articles.isEmpty()) {
+            return Flux.empty();
+        }
+        final List<Article> batch = unique(articles);
+        final List<WriteModel<Document>> writes = new ArrayList<>(batch.size());
+        for (Article article : batch) {
+            writes.add(upsertOf(article));
+        }
+        return mongoTemplate
+                .execute(Article.class, collection -> collection.bulkWrite(writes, new BulkWriteOptions().ordered(false)))
+                .flatMapIterable(result -> result.getUpserts())
+                .map(upsert -> batch.get(upsert.getIndex()));
+    }
+
+    /**
+     * Same article in two feeds would otherwise make concurrent upserts of one <code>_id</code> collide
+     */
+    private static List<Article> unique(Collection<Article> articles) {
+        final Map<URI, Article> byLink = new LinkedHashMap<>();
+        for (Article article : articles) {
+            byLink.putIfAbsent(article.getLink(), article);
+        }
+        return new ArrayList<>(byLink.values());
+    }
+
+    private WriteModel<Document> upsertOf(Article article) {
+        final Document document = new Document();
+        mongoTemplate.getConverter().write(article, document);
+        final Object id = document.remove("_id");
+        return new UpdateOneModel<>(
+                new Document("_id", id),
+                new Document("$setOnInsert", document),
+                new UpdateOptions().upsert(true));
+    }
+
+}
@@ -1,14 +1,14 @@
 package com.nurkiewicz.webflux.demo.feed;
 
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import reactor.core.publisher.Flux;
 
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-
-import java.util.Comparator;
+import org.springframework.web.server.ResponseStatusException;
 
 import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
@@ -18,21 +18,29 @@ public class ArticlesController {
 
     private final ArticlesStream articlesStream;
     private final ArticleRepository articleRepository;
+    private final NewestArticles newestArticles;
 
-    public ArticlesController(ArticlesStream articlesStream, ArticleRepository articleRepository) {
+    public ArticlesController(ArticlesStream articlesStream, ArticleRepository articleRepository, NewestArticles newestArticles) {
         this.articlesStream = articlesStream;
         this.articleRepository = articleRepository;
+        this.newestArticles = newestArticles;
     }
 
     /**
      * TODO (6) Return newest articles
+     * <p>
+     * Served from memory, unless <code>limit</code> is larger than {@link NewestArticles#CAPACITY}.
+     * Then only <code>limit</code> documents are read from Mongo, using index on <code>publishedDate</code>.
      */
     @GetMapping("/newest/{limit}")
     Flux<Article> newest(@PathVariable int limit) {
-        return articleRepository
-                .findAll()
-                .sort(Comparator.comparing(Article::getPublishedDate, Comparator.reverseOrder()))
-                .take(limit);
+        if (limit < 1) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive"));
+        }
+        return newestArticles
+                .newest(limit)
+                .map(Flux::fromIterable)
+                .orElseGet(() -> articleRepository.findAllByOrderByPublishedDateDesc(PageRequest.of(0, limit)));
     }
 
     /**
@@ -40,7 +48,7 @@ public class ArticlesController {
      */
     @GetMapping(value = "/newest-stream", produces = TEXT_EVENT_STREAM_VALUE)
     Flux<Article> streamNew() {
-        return Flux.empty();
+        return articlesStream.newArticles();
     }
 
 }
@@ -1,26 +1,99 @@
 package com.nurkiewicz.webflux.demo.feed;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 @Component
 public class ArticlesStream {
 
+    private static final Logger log = LoggerFactory.getLogger(ArticlesStream.class);
+
+    /**
+     * Articles a single slow subscriber may fall behind before the oldest ones are dropped
+     */
+    static final int SUBSCRIBER_BUFFER_SIZE = 64;
+
     private final ArticleRepository articleRepository;
     private final FeedAggregator feedAggregator;
+    private final ArticleChangeStream articleChangeStream;
+    private final boolean useChangeStream;
 
-    public ArticlesStream(ArticleRepository articleRepository, FeedAggregator feedAggregator) {
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger maxLag = new AtomicInteger();
+
+    /**
+     * @param useChangeStream <code>false</code>: only articles stored by this instance, see {@link FeedAggregator#newArticles()}.
+     *                        <code>true</code>: articles stored by any instance, see {@link ArticleChangeStream}.
+     */
+    public ArticlesStream(
+            ArticleRepository articleRepository,
+            FeedAggregator feedAggregator,
+            ArticleChangeStream articleChangeStream,
+            @Value("${articles.change-stream.enabled:false}") boolean useChangeStream
+    ) {
         this.articleRepository = articleRepository;
         this.feedAggregator = feedAggregator;
+        this.articleChangeStream = articleChangeStream;
+        this.useChangeStream = useChangeStream;
+        Metrics.gauge("articles.stream.subscribers", subscribers);
+        Metrics.more().counter("articles.stream.dropped", Tags.empty(), dropped);
+        Metrics.gauge("articles.stream.max.lag", maxLag);
     }
 
     /**
      * TODO (7) Create an infinite stream of new articles
-     * @return
+     * <p>
+     * All subscribers share one hot stream, either fed by {@link FeedAggregator} right after articles are stored
+     * or tailed from Mongo change stream, never by querying Mongo per subscriber. Each subscriber has its own bounded buffer, when it overflows
+     * the oldest articles are dropped for that subscriber only.
      */
     Flux<Article> newArticles() {
-        return Flux.empty();
+        return Flux.defer(() -> {
+            final AtomicInteger lag = new AtomicInteger();
+            final Flux<Article> source = useChangeStream ?
+                    articleChangeStream.newArticles() :
+                    feedAggregator.newArticles();
+            return source
+                    .doOnNext(article -> maxLag.accumulateAndGet(lag.incrementAndGet(), Math::max))
+                    .onBackpressureBuffer(SUBSCRIBER_BUFFER_SIZE, article -> {
+                        lag.decrementAndGet();
+                        dropped.incrementAndGet();
+                        log.debug("Slow subscriber, dropping {}", article.getLink());
+                    }, BufferOverflowStrategy.DROP_OLDEST)
+                    .doOnNext(article -> lag.decrementAndGet())
+                    .doOnSubscribe(s -> subscribers.incrementAndGet())
+                    .doFinally(signal -> subscribers.decrementAndGet());
+        });
+    }
+
+    int subscribers() {
+        return subscribers.get();
+    }
+
+    /**
+     * Total number of articles dropped for slow subscribers
+     */
+    long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Largest number of articles any subscriber had waiting for delivery,
+     * including the one just arriving when its buffer overflowed
+     */
+    int maxLag() {
+        return maxLag.get();
     }
 
 }
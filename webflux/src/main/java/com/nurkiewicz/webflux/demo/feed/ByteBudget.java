@@ -0,0 +1,226 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Global limit of feed bytes held in memory at the same time, across all concurrent fetches.
+ * <p>
+ * Every fetch takes a {@link Reservation}. Once response headers arrive, it {@link Reservation#acquire(long) acquires}
+ * as many bytes as the body is expected to take (<code>Content-Length</code> or {@link #DEFAULT_ESTIMATE})
+ * and only then starts reading the body. When budget is exhausted, new fetches wait in FIFO order without
+ * reading anything: body stays in the socket, TCP flow control slows down the server.
+ * <p>
+ * Bodies larger than acquired (e.g. chunked, without <code>Content-Length</code>) grow their reservation
+ * as {@link Reservation#received(long) chunks arrive}, and stop reading while the budget cannot cover them.
+ * Growing reservations go before new ones, they already hold memory that is freed only once they complete.
+ * The oldest reservation holding bytes may always grow, so some fetch always makes progress - no deadlock.
+ * <p>
+ * A single body larger than the whole budget is admitted when nothing else is in memory. Altogether at most
+ * one body (the oldest one) is held beyond the limit.
+ */
+@Component
+class ByteBudget {
+
+    static final long DEFAULT_ESTIMATE = 256 * 1024;
+
+    private final long limit;
+    private final Deque<Pending> queue = new ArrayDeque<>();
+    private final Deque<Pending> growing = new ArrayDeque<>();
+
+    /**
+     * Reservations holding bytes, oldest first
+     */
+    private final Set<Reservation> active = new LinkedHashSet<>();
+    private long used;
+    private long peak;
+
+    ByteBudget(@Value("${feed.in-flight-bytes:64MB}") DataSize limit) {
+        this.limit = limit.toBytes();
+        Metrics.gauge("feed.download.in.flight.bytes", this, ByteBudget::used);
+        Metrics.gauge("feed.download.waiting", this, ByteBudget::waiting);
+    }
+
+    Reservation reservation() {
+        return new Reservation();
+    }
+
+    synchronized long used() {
+        return used;
+    }
+
+    /**
+     * Highest number of bytes held at once so far
+     */
+    synchronized long peak() {
+        return peak;
+    }
+
+    synchronized int waiting() {
+        return queue.size() + growing.size();
+    }
+
+    private boolean fits(long bytes) {
+        return used == 0 || used + bytes <= limit;
+    }
+
+    private boolean canGrow(Reservation reservation, long bytes) {
+        return fits(bytes) || active.iterator().next() == reservation;
+    }
+
+    private void take(Reservation reservation, long bytes) {
+        active.add(reservation);
+        reservation.bytes += bytes;
+        used += bytes;
+        peak = Math.max(peak, used);
+    }
+
+    /**
+     * Must be called while holding the lock. Admits growing reservations that fit, then new ones in order, as long as they fit.
+     */
+    private List<MonoSink<Void>> admit() {
+        final List<MonoSink<Void>> admitted = new ArrayList<>();
+        for (Iterator<Pending> iterator = growing.iterator(); iterator.hasNext(); ) {
+            final Pending next = iterator.next();
+            if (canGrow(next.reservation, next.bytes)) {
+                iterator.remove();
+                next.reservation.pending = null;
+                take(next.reservation, next.bytes);
+                admitted.add(next.sink);
+            }
+        }
+        while (growing.isEmpty() && !queue.isEmpty() && fits(queue.peek().bytes)) {
+            final Pending next = queue.poll();
+            next.reservation.pending = null;
+            take(next.reservation, next.bytes);
+            admitted.add(next.sink);
+        }
+        return admitted;
+    }
+
+    class Reservation {
+
+        private long bytes;
+        private long received;
+        private boolean released;
+        private Pending pending;
+
+        /**
+         * Completes once <code>bytes</code> fit into the budget
+         */
+        Mono<Void> acquire(long bytes) {
+            return Mono.create(sink -> {
+                final boolean admitted;
+                synchronized (ByteBudget.this) {
+                    if (released || (queue.isEmpty() && growing.isEmpty() && fits(bytes))) {
+                        if (!released) {
+                            take(this, bytes);
+                        }
+                        admitted = true;
+                    } else {
+                        pending = new Pending(this, bytes, sink);
+                        queue.add(pending);
+                        admitted = false;
+                    }
+                }
+                if (admitted) {
+                    sink.success();
+                } else {
+                    sink.onCancel(this::cancel);
+                }
+            });
+        }
+
+        /**
+         * Another <code>bytes</code> of body arrived. If body is now larger than acquired, completes once the difference
+         * fits into the budget too. Next chunk should not be read before that.
+         */
+        Mono<Void> received(long bytes) {
+            return Mono.create(sink -> {
+                final boolean admitted;
+                synchronized (ByteBudget.this) {
+                    received += bytes;
+                    final long missing = received - this.bytes;
+                    if (released || missing <= 0) {
+                        admitted = true;
+                    } else if (canGrow(this, missing)) {
+                        take(this, missing);
+                        admitted = true;
+                    } else {
+                        pending = new Pending(this, missing, sink);
+                        growing.add(pending);
+                        admitted = false;
+                    }
+                }
+                if (admitted) {
+                    sink.success();
+                } else {
+                    sink.onCancel(this::cancel);
+                }
+            });
+        }
+
+        /**
+         * Returns all bytes to the budget, e.g. once body was parsed. Idempotent.
+         */
+        void release() {
+            final List<MonoSink<Void>> admitted;
+            synchronized (ByteBudget.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                if (pending != null) {
+                    queue.remove(pending);
+                    growing.remove(pending);
+                    pending = null;
+                }
+                active.remove(this);
+                used -= bytes;
+                bytes = 0;
+                admitted = admit();
+            }
+            admitted.forEach(MonoSink::success);
+        }
+
+        private void cancel() {
+            final List<MonoSink<Void>> admitted;
+            synchronized (ByteBudget.this) {
+                if (pending == null) {
+                    return;
+                }
+                queue.remove(pending);
+                growing.remove(pending);
+                pending = null;
+                admitted = admit();
+            }
+            admitted.forEach(MonoSink::success);
+        }
+    }
+
+    private static class Pending {
+
+        private final Reservation reservation;
+        private final long bytes;
+        private final MonoSink<Void> sink;
+
+        Pending(Reservation reservation, long bytes, MonoSink<Void> sink) {
+            this.reservation = reservation;
+            this.bytes = bytes;
+            this.sink = sink;
+        }
+    }
+
+}
@@ -1,53 +1,435 @@
 package com.nurkiewicz.webflux.demo.feed;
 
-import com.rometools.opml.feed.opml.Outline;
-import com.rometools.rome.io.FeedException;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import javax.annotation.PostConstruct;
-import java.io.IOException;
+import javax.annotation.PreDestroy;
 import java.net.URL;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 @Component
 public class FeedAggregator {
 
     private static final Logger log = LoggerFactory.getLogger(FeedAggregator.class);
 
+    /**
+     * How often to look for feeds due, see {@link PollSchedule}
+     */
+    private static final Duration TICK = Duration.ofSeconds(1);
+
+    /**
+     * How often to check for feeds added to or removed from OPML
+     */
+    private static final Duration FEED_LIST_REFRESH = Duration.ofSeconds(30);
+
+    /**
+     * Changed feeds are written together, once this many accumulate or {@link #BATCH_TIMEOUT} passes
+     */
+    private static final int FEEDS_PER_BATCH = 100;
+    private static final Duration BATCH_TIMEOUT = Duration.ofSeconds(1);
+
+    /**
+     * How many recently stored articles a new subscriber of {@link #newArticles()} sees first
+     */
+    private static final int REPLAY_SIZE = 10;
+
     private final OpmlReader opmlReader;
     private final FeedReader feedReader;
-    private final ArticleRepository articleRepository;
+    private final ArticleWriter articleWriter;
+    private final FeedWatermarkRepository watermarkRepository;
+    private final NewestArticles newestArticles;
+    private final RedisRepository redisRepository;
+    private final int fetchConcurrency;
+    private final boolean ingestionEnabled;
+
+    /**
+     * Identifies this instance as lease owner
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<String, FeedWatermark> watermarks = new ConcurrentHashMap<>();
+    private final PollSchedule schedule = new PollSchedule(new Random());
+    private volatile Instant feedListRefreshed = Instant.MIN;
+    private volatile long feedListVersion;
+    private final Sinks.Many<Article> newArticles = Sinks.many().replay().limit(REPLAY_SIZE);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicLong mongoQueries = new AtomicLong();
+    private Disposable subscription;
 
     public FeedAggregator(
             OpmlReader opmlReader,
             FeedReader feedReader,
-            ArticleRepository articleRepository
+            ArticleWriter articleWriter,
+            FeedWatermarkRepository watermarkRepository,
+            NewestArticles newestArticles,
+            RedisRepository redisRepository,
+            @Value("${feed.fetch-concurrency:32}") int fetchConcurrency,
+            @Value("${feed.ingestion.enabled:true}") boolean ingestionEnabled
     ) {
         this.opmlReader = opmlReader;
         this.feedReader = feedReader;
-        this.articleRepository = articleRepository;
+        this.articleWriter = articleWriter;
+        this.watermarkRepository = watermarkRepository;
+        this.newestArticles = newestArticles;
+        this.redisRepository = redisRepository;
+        this.fetchConcurrency = fetchConcurrency;
+        this.ingestionEnabled = ingestionEnabled;
+        Metrics.gauge("feed.cycle.mongo.queries", mongoQueries);
     }
 
     /**
-     * TODO (4) Read all feeds and store them into database
-     * TODO (5) Repeat periodically, do not store duplicates
+     * Every {@link #TICK} fetches feeds that are due according to {@link PollSchedule}, at most <code>fetchConcurrency</code>
+     * at a time, and stores new articles. Ticks that arrive while the previous cycle is still running are skipped,
+     * so cycles never overlap.
+     * <p>
+     * Disable with <code>feed.ingestion.enabled=false</code> on web-only instances,
+     * they can still see new articles through {@link ArticleChangeStream}.
      */
     @PostConstruct
-    public void init() throws IOException, FeedException {
-        Flux.interval(Duration.ZERO, Duration.ofSeconds(30))
-                .flatMap(e -> opmlReader.allFeedsStream())
-                .map(Outline::getXmlUrl)
-                .flatMap(url -> Mono.fromCallable(() -> new URL(url)))
-                .subscribe(url -> feedReader.fetch(url)
-                        .flatMap(Article::fromSyndEntry)
-                        .filterWhen(article -> articleRepository.existsById(article.getLink()).map(it -> !it))
-                        .subscribe(entity -> articleRepository.insert(entity)
-                                .subscribe(e -> log.info("Stored to db :: {}: {} at {}", e.getPublishedDate(), e.getTitle(), e.getLink()))
-                        )
-                );
+    public void init() {
+        if (!ingestionEnabled) {
+            log.info("Feed ingestion disabled on this instance");
+            return;
+        }
+        subscription = Flux
+                .interval(Duration.ZERO, TICK)
+                .onBackpressureDrop(tick -> log.trace("Previous fetch cycle still running, skipping tick {}", tick))
+                .flatMap(tick -> cycle(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    Mono<Void> cycle() {
+        return cycle(Instant.now());
+    }
+
+    /**
+     * @param now feeds due at that time are fetched
+     */
+    Mono<Void> cycle(Instant now) {
+        return refreshFeedList(now)
+                .then(Mono.defer(() -> {
+                    final List<String> due = schedule.due(now);
+                    if (due.isEmpty()) {
+                        return Mono.<Void>empty();
+                    }
+                    final long start = System.nanoTime();
+                    peakInFlight.set(0);
+                    mongoQueries.set(0);
+                    return Flux
+                            .fromIterable(due)
+                            .flatMap(this::fetch, fetchConcurrency)
+                            .bufferTimeout(FEEDS_PER_BATCH, BATCH_TIMEOUT)
+                            // bufferTimeout() does not honour backpressure, number of batches is bounded by number of feeds anyway
+                            .onBackpressureBuffer()
+                            .concatMap(this::store)
+                            .then()
+                            .doOnSuccess(v -> log.info("Fetched {} of {} feeds in {} ms, peak {} in flight, {} Mongo queries",
+                                    due.size(), schedule.size(), Duration.ofNanos(System.nanoTime() - start).toMillis(),
+                                    peakInFlight.get(), mongoQueries.get()));
+                }))
+                .onErrorResume(e -> {
+                    log.warn("Fetch cycle failed", e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Applies only the difference since previous OPML version, if known
+     */
+    private Mono<Void> refreshFeedList(Instant now) {
+        if (now.isBefore(feedListRefreshed.plus(FEED_LIST_REFRESH))) {
+            return Mono.empty();
+        }
+        return opmlReader
+                .feedList()
+                .doOnNext(feedList -> {
+                    if (feedList.getVersion() == feedListVersion + 1) {
+                        feedList.getRemoved().forEach(schedule::remove);
+                        feedList.getAdded().forEach(feed -> schedule.add(feed, now));
+                    } else if (feedList.getVersion() != feedListVersion) {
+                        schedule.update(feedList.getFeeds(), now);
+                    }
+                    feedListVersion = feedList.getVersion();
+                    feedListRefreshed = now;
+                })
+                .then();
+    }
+
+    /**
+     * Feeds leased by another instance in this cycle are skipped. So are feeds another instance fetched recently,
+     * they are rescheduled to the next poll time it shared. Validators and entry hash from the last fetch,
+     * by whichever instance, avoid downloading and processing unchanged feeds.
+     * Only articles not covered by feed's {@link FeedWatermark} nor recent links in Redis are written to Mongo,
+     * so an unchanged feed costs no Mongo queries at all.
+     */
+    private Mono<FeedUpdate> fetch(String feed) {
+        return lease(feed)
+                .filter(leased -> leased)
+                .switchIfEmpty(Mono.fromRunnable(() -> schedule.skipped(feed, Instant.now())))
+                .flatMap(leased -> sharedMetadata(feed))
+                .filter(shared -> !postponed(feed, shared))
+                .flatMap(shared -> {
+                    shared.ifPresent(metadata -> feedReader.remember(feed, new FeedReader.Validators(metadata.getEtag(), metadata.getLastModified())));
+                    final String previousHash = shared.map(FeedMetadata::getEntryHash).orElse(null);
+                    return Mono
+                            .fromCallable(() -> new URL(feed))
+                            .flatMap(feedReader::fetchModified)
+                            .flatMap(modified -> Flux
+                                    .fromIterable(modified.getContent())
+                                    .flatMap(Article::fromSyndEntry)
+                                    .collectList()
+                                    .map(articles -> new FeedReader.Modified<>(articles, modified.getValidators())))
+                            .switchIfEmpty(Mono.fromSupplier(() -> new FeedReader.Modified<>(List.<Article>of(), feedReader.validators(feed))))
+                            .flatMap(fetched -> update(feed, previousHash, fetched.getContent(), fetched.getValidators()));
+                })
+                .doOnSubscribe(s -> peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                .doFinally(signal -> inFlight.decrementAndGet())
+                .onErrorResume(e -> {
+                    schedule.failed(feed, Instant.now());
+                    log.warn("Failed to fetch {}: {}", feed, e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Fetching a feed twice is harmless (writes are idempotent), so when Redis is unavailable every instance fetches
+     */
+    private Mono<Boolean> lease(String feed) {
+        return redisRepository
+                .tryLease(feed, instanceId, PollSchedule.MIN_INTERVAL)
+                .onErrorResume(e -> {
+                    log.warn("Unable to lease {}, fetching anyway: {}", feed, e.toString());
+                    return Mono.just(true);
+                });
+    }
+
+    /**
+     * Lease only prevents concurrent fetches, it expires after {@link PollSchedule#MIN_INTERVAL}.
+     * Whoever fetched the feed last decided when it is due next (possibly much later, when the feed is idle),
+     * so other instances follow that instead of their own, outdated schedule.
+     *
+     * @return <code>true</code> if feed is not due yet according to shared next poll time
+     */
+    private boolean postponed(String feed, Optional<FeedMetadata> shared) {
+        final Instant now = Instant.now();
+        final Instant nextPoll = shared.map(FeedMetadata::getNextPoll).orElse(null);
+        if (nextPoll == null || !nextPoll.isAfter(now)) {
+            return false;
+        }
+        log.debug("{} fetched recently by another instance, next poll at {}", feed, schedule.postponed(feed, now, nextPoll));
+        return true;
+    }
+
+    private Mono<Optional<FeedMetadata>> sharedMetadata(String feed) {
+        return redisRepository
+                .metadata(feed)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .onErrorReturn(Optional.empty());
     }
+
+    /**
+     * Feed counts as changed only if it brought articles not known yet, so idle feeds back off even when Redis metadata
+     * is missing or items were merely reordered or edited. Unchanged entry hash is a shortcut that skips looking for new articles.
+     *
+     * @param validators received with <code>articles</code>, remembered only after they are {@link #store(List) stored}
+     */
+    private Mono<FeedUpdate> update(String feed, String previousHash, List<Article> articles, FeedReader.Validators validators) {
+        final String hash = articles.isEmpty() ? previousHash : entryHash(articles);
+        final Mono<FeedUpdate> update = articles.isEmpty() || hash.equals(previousHash) ?
+                Mono.just(FeedUpdate.unchanged(feed, hash, validators)) :
+                Mono
+                        .zip(watermark(feed), recentLinks(feed))
+                        .map(known -> new FeedUpdate(feed, hash, validators, known.getT1(), known.getT2(), articles));
+        final List<Instant> published = articles.stream().map(Article::getPublishedDate).collect(Collectors.toList());
+        return update.doOnNext(fetched ->
+                fetched.nextPoll = schedule.completed(feed, Instant.now(), !fetched.candidates.isEmpty(), published));
+    }
+
+    private static String entryHash(List<Article> articles) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (Article article : articles) {
+            hasher
+                    .putString(article.getLink().toString(), UTF_8)
+                    .putLong(article.getPublishedDate().toEpochMilli());
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Watermarks, recent links, validators and entry hash move only after articles are safely stored. If that fails, same articles are
+     * downloaded again and retried next cycle, which is fine since writes are idempotent upserts.
+     * Mongo watermark is authoritative and saved first, state shared through Redis is best-effort:
+     * when Redis is down, other instances merely repeat some work.
+     */
+    private Mono<Void> store(List<FeedUpdate> updates) {
+        final List<Article> candidates = new ArrayList<>();
+        updates.forEach(update -> candidates.addAll(update.candidates));
+        final Flux<Article> stored = candidates.isEmpty() ?
+                Flux.empty() :
+                articleWriter.upsert(candidates).doOnSubscribe(s -> mongoQueries.incrementAndGet());
+        return stored
+                .doOnNext(e -> log.info("Stored to db :: {}: {} at {}", e.getPublishedDate(), e.getTitle(), e.getLink()))
+                .doOnNext(newArticles::tryEmitNext)
+                .collectList()
+                .doOnNext(newestArticles::addAll)
+                .thenMany(Flux.fromIterable(updates))
+                .concatMap(update -> {
+                    Mono<?> saved = Mono.empty();
+                    if (update.advanced != null) {
+                        saved = counted(watermarkRepository.save(update.advanced))
+                                .doOnNext(watermark -> watermarks.put(update.feed, watermark))
+                                .then(bestEffort(redisRepository.addRecentLinks(update.feed, update.articles), "recent links", update.feed));
+                    }
+                    return saved
+                            .then(Mono.fromRunnable(() -> update.validators.ifPresent(validators -> feedReader.remember(update.feed, validators))))
+                            .then(bestEffort(redisRepository.saveMetadata(update.feed, update.metadata()), "metadata", update.feed));
+                })
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Failed to store {} articles from {} feeds: {}", candidates.size(), updates.size(), e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Without Redis only {@link FeedWatermark} recognises known articles
+     */
+    private Mono<Set<String>> recentLinks(String feed) {
+        return redisRepository
+                .recentLinks(feed)
+                .onErrorResume(e -> {
+                    log.warn("Unable to load recent links of {}: {}", feed, e.toString());
+                    return Mono.just(Set.of());
+                });
+    }
+
+    private Mono<Void> bestEffort(Mono<?> redisWrite, String what, String feed) {
+        return redisWrite
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Unable to share {} of {}: {}", what, feed, e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<FeedWatermark> watermark(String feed) {
+        final FeedWatermark cached = watermarks.get(feed);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return counted(watermarkRepository.findById(feed))
+                .defaultIfEmpty(FeedWatermark.empty(feed))
+                .doOnNext(loaded -> watermarks.put(feed, loaded));
+    }
+
+    private <T> Mono<T> counted(Mono<T> query) {
+        return query.doOnSubscribe(s -> mongoQueries.incrementAndGet());
+    }
+
+    /**
+     * Hot stream of articles right after they were stored, starting with last few stored.
+     * Never completes. Subscribers must not apply backpressure, otherwise they hold on to replay buffer.
+     */
+    Flux<Article> newArticles() {
+        return newArticles.asFlux();
+    }
+
+    int peakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * Number of Mongo queries issued during last (or current) cycle
+     */
+    long mongoQueries() {
+        return mongoQueries.get();
+    }
+
+    /**
+     * Result of fetching a single feed: articles not known yet, and what to persist once they are stored
+     */
+    private static class FeedUpdate {
+        private final String feed;
+        private final String hash;
+        private final Optional<FeedReader.Validators> validators;
+        private final List<Article> articles;
+        private final List<Article> candidates = new ArrayList<>();
+
+        /**
+         * <code>null</code> if watermark did not move
+         */
+        private final FeedWatermark advanced;
+
+        /**
+         * Set once {@link PollSchedule} learned whether there were any {@link #candidates}
+         */
+        private Instant nextPoll;
+
+        FeedUpdate(String feed, String hash, FeedReader.Validators validators, FeedWatermark watermark, Set<String> recentLinks, List<Article> articles) {
+            this.feed = feed;
+            this.hash = hash;
+            this.validators = Optional.ofNullable(validators);
+            this.articles = articles;
+            for (Article article : articles) {
+                if (!watermark.isKnown(article) && !recentLinks.contains(article.getLink().toString())) {
+                    candidates.add(article);
+                }
+            }
+            final FeedWatermark advanced = watermark.advance(articles);
+            this.advanced = advanced != watermark ? advanced : null;
+        }
+
+        private FeedUpdate(String feed, String hash, FeedReader.Validators validators) {
+            this.feed = feed;
+            this.hash = hash;
+            this.validators = Optional.ofNullable(validators);
+            this.articles = List.of();
+            this.advanced = null;
+        }
+
+        static FeedUpdate unchanged(String feed, String hash, FeedReader.Validators validators) {
+            return new FeedUpdate(feed, hash, validators);
+        }
+
+        FeedMetadata metadata() {
+            return new FeedMetadata(
+                    validators.map(FeedReader.Validators::getEtag).orElse(null),
+                    validators.map(FeedReader.Validators::getLastModified).orElse(null),
+                    hash,
+                    nextPoll);
+        }
+    }
+
 }
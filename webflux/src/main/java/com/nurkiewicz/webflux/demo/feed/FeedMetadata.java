@@ -0,0 +1,68 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * What an instance learned about a feed last time it fetched it, shared with other instances through {@link RedisRepository}
+ */
+class FeedMetadata {
+
+    private final String etag;
+    private final String lastModified;
+
+    /**
+     * Hash of links and publication dates of all entries, to recognise unchanged feeds that do not support conditional GET
+     */
+    private final String entryHash;
+
+    private final Instant nextPoll;
+
+    FeedMetadata(String etag, String lastModified, String entryHash, Instant nextPoll) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.entryHash = entryHash;
+        this.nextPoll = nextPoll;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    String getLastModified() {
+        return lastModified;
+    }
+
+    String getEntryHash() {
+        return entryHash;
+    }
+
+    Instant getNextPoll() {
+        return nextPoll;
+    }
+
+    /**
+     * Redis hash cannot hold <code>null</code>, missing values are stored as empty strings
+     */
+    Map<String, String> toMap() {
+        return Map.of(
+                "etag", etag == null ? "" : etag,
+                "lastModified", lastModified == null ? "" : lastModified,
+                "entryHash", entryHash == null ? "" : entryHash,
+                "nextPoll", nextPoll == null ? "" : nextPoll.toString());
+    }
+
+    static FeedMetadata fromMap(Map<String, String> map) {
+        final String nextPoll = emptyToNull(map.get("nextPoll"));
+        return new FeedMetadata(
+                emptyToNull(map.get("etag")),
+                emptyToNull(map.get("lastModified")),
+                emptyToNull(map.get("entryHash")),
+                nextPoll == null ? null : Instant.parse(nextPoll));
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+}
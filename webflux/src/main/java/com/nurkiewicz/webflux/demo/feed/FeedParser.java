@@ -0,0 +1,186 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import com.rometools.rome.feed.synd.SyndEntry;
+import com.rometools.rome.feed.synd.SyndEntryImpl;
+import com.rometools.rome.io.impl.DateParser;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streaming (StAX) parser of RSS 0.9x/1.0/2.0 and Atom feeds.
+ * <p>
+ * Reads feed bytes directly, without decoding into {@link String} or building a DOM,
+ * and emits entries one by one as they are parsed. Elements are matched by local name only,
+ * so feeds declaring Atom namespace as <code>https://www.w3.org/2005/Atom</code> work as well.
+ * Only fields needed by {@link Article} are extracted: title, link and publication date.
+ */
+final class FeedParser {
+
+    private static final XMLInputFactory factory = createFactory();
+
+    private static final Set<String> ENTRIES = Set.of("item", "entry");
+    private static final Set<String> PUBLISHED = Set.of("pubDate", "published", "issued", "date");
+    private static final Set<String> UPDATED = Set.of("updated", "modified");
+
+    private FeedParser() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Releases <code>feed</code> when the returned stream terminates or is cancelled.
+     */
+    static Flux<SyndEntry> parse(DataBuffer feed) {
+        return Flux.generate(
+                () -> new Cursor(feed),
+                (cursor, sink) -> {
+                    try {
+                        final SyndEntry entry = cursor.nextEntry();
+                        if (entry != null) {
+                            sink.next(entry);
+                        } else {
+                            sink.complete();
+                        }
+                    } catch (XMLStreamException e) {
+                        sink.error(e);
+                    }
+                    return cursor;
+                },
+                Cursor::close);
+    }
+
+    private static class Cursor {
+
+        private final DataBuffer feed;
+        private XMLStreamReader reader;
+        private int depth;
+
+        Cursor(DataBuffer feed) {
+            this.feed = feed;
+        }
+
+        SyndEntry nextEntry() throws XMLStreamException {
+            if (reader == null) {
+                reader = factory.createXMLStreamReader(feed.asInputStream());
+            }
+            SyndEntry entry = null;
+            int entryDepth = -1;
+            Date updated = null;
+            String guid = null;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    final String name = reader.getLocalName();
+                    if (entry == null) {
+                        if (ENTRIES.contains(name)) {
+                            entry = new SyndEntryImpl();
+                            entryDepth = depth;
+                        }
+                    } else if (depth == entryDepth + 1) {
+                        if (name.equals("title")) {
+                            entry.setTitle(readText());
+                        } else if (name.equals("link")) {
+                            readLink(entry);
+                        } else if (name.equals("guid")) {
+                            final boolean permaLink = !"false".equals(reader.getAttributeValue(null, "isPermaLink"));
+                            final String text = readText();
+                            guid = permaLink ? text : null;
+                        } else if (PUBLISHED.contains(name)) {
+                            final Date date = parseDate(readText());
+                            if (date != null && entry.getPublishedDate() == null) {
+                                entry.setPublishedDate(date);
+                            }
+                        } else if (UPDATED.contains(name)) {
+                            updated = parseDate(readText());
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (entry != null && depth == entryDepth) {
+                        depth--;
+                        if (entry.getPublishedDate() == null) {
+                            entry.setPublishedDate(updated);
+                        }
+                        if (entry.getLink() == null) {
+                            entry.setLink(guid);
+                        }
+                        return entry;
+                    }
+                    depth--;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * RSS: <code>&lt;link&gt;url&lt;/link&gt;</code>, Atom: <code>&lt;link rel="alternate" href="url"/&gt;</code>
+         */
+        private void readLink(SyndEntry entry) throws XMLStreamException {
+            final String href = reader.getAttributeValue(null, "href");
+            final String rel = reader.getAttributeValue(null, "rel");
+            final String text = readText();
+            if (href != null) {
+                if (rel == null || rel.equals("alternate")) {
+                    entry.setLink(href);
+                }
+            } else if (!text.isEmpty() && entry.getLink() == null) {
+                entry.setLink(text);
+            }
+        }
+
+        /**
+         * Text content of current element, including nested elements, consuming its end tag
+         */
+        private String readText() throws XMLStreamException {
+            final StringBuilder text = new StringBuilder();
+            int nested = 0;
+            while (true) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    nested++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (nested == 0) {
+                        depth--;
+                        return text.toString().trim();
+                    }
+                    nested--;
+                }
+            }
+        }
+
+        private static Date parseDate(String text) {
+            return text.isEmpty() ? null : DateParser.parseDate(text, Locale.US);
+        }
+
+        void close() {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (XMLStreamException ignored) {
+                // nothing to clean up anyway
+            } finally {
+                DataBufferUtils.release(feed);
+            }
+        }
+    }
+
+}
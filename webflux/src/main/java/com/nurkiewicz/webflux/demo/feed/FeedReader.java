@@ -2,8 +2,13 @@ package com.nurkiewicz.webflux.demo.feed;
 
 import com.google.common.io.CharStreams;
 import com.rometools.rome.feed.synd.SyndEntry;
-import com.rometools.rome.feed.synd.SyndFeed;
-import com.rometools.rome.io.SyndFeedInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Component;
@@ -12,38 +17,69 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 @Component
 public class FeedReader {
 
+    private static final Logger log = LoggerFactory.getLogger(FeedReader.class);
+
+    private static final int MAX_FEED_SIZE = 10 * 1024 * 1024;
+
     private final WebClient webClient;
+    private final HostLimiter hostLimiter;
+    private final ByteBudget byteBudget;
+    private final Map<String, Validators> validators = new ConcurrentHashMap<>();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong parses = new AtomicLong();
 
-    FeedReader(WebClient webClient) {
+    FeedReader(@Qualifier("feedWebClient") WebClient webClient, HostLimiter hostLimiter, ByteBudget byteBudget) {
         this.webClient = webClient;
+        this.hostLimiter = hostLimiter;
+        this.byteBudget = byteBudget;
     }
 
     /**
      * TODO (3) Return <code>Flux&lt;SyndEntry&gt;</code>
-     * Start by replacing {@link #get(URL)} with {@link #getAsync(URL)}.
+     * Start by replacing {@link #get(URL)} with {@link #getAsync(URL, ByteBudget.Reservation)}.
+     * <p>
+     * Validators of the response are remembered once the whole feed was parsed,
+     * see {@link #fetchModified(URL)} to remember them later.
      */
     public Flux<SyndEntry> fetch(URL url) {
-        return getAsync(url)
-                .map(feedBody -> new ByteArrayInputStream(applyAtomNamespaceFix(feedBody).getBytes(UTF_8)))
-                .flatMap(is -> Mono.fromCallable(() -> DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is)))
-                .flatMap(document -> Mono.fromCallable(() -> new SyndFeedInput().build(document)))
-                .flatMapIterable(SyndFeed::getEntries);
+        return fetchModified(url)
+                .flatMapIterable(modified -> {
+                    remember(url.toString(), modified.getValidators());
+                    return modified.getContent();
+                });
     }
 
-    private String applyAtomNamespaceFix(String feedBody) {
-        return feedBody.replace("https://www.w3.org/2005/Atom", "http://www.w3.org/2005/Atom");
+    /**
+     * All entries of <code>url</code>, empty if feed did not change since validators last {@link #remember(String, Validators) remembered}.
+     * Validators received with the entries are not remembered, caller should do that once it is done with the entries,
+     * otherwise entries that failed to be processed would not be fetched again until the feed changes.
+     * <p>
+     * Body counts against {@link ByteBudget} until it is fully parsed.
+     */
+    Mono<Modified<List<SyndEntry>>> fetchModified(URL url) {
+        return Mono.usingWhen(
+                Mono.fromSupplier(byteBudget::reservation),
+                reservation -> getAsync(url, reservation)
+                        .doOnNext(body -> parses.incrementAndGet())
+                        .flatMap(body -> FeedParser
+                                .parse(body.getContent())
+                                .collectList()
+                                .map(entries -> new Modified<>(entries, body.getValidators()))),
+                reservation -> Mono.fromRunnable(reservation::release));
     }
 
     private String get(URL url) throws IOException {
@@ -58,15 +94,123 @@ public class FeedReader {
 
     /**
      * TODO (2) Load data asynchronously using {@link org.springframework.web.reactive.function.client.WebClient}
+     * <p>
+     * Conditional GET: remembers <code>ETag</code> and <code>Last-Modified</code> of every feed
+     * and sends them back as <code>If-None-Match</code> / <code>If-Modified-Since</code>.
+     * Empty if feed did not change since last fetch (<code>304 Not Modified</code>).
+     * Otherwise raw, undecoded feed body, which caller must release, with validators that came with it.
+     * Subject to per-host limits of {@link HostLimiter}.
+     * Body is read only as long as it fits into <code>reservation</code>, bodies over {@link #MAX_FEED_SIZE} are rejected.
      *
      * @see <a href="https://stackoverflow.com/questions/47655789/how-to-make-reactive-webclient-follow-3xx-redirects">How to make reactive webclient follow 3XX-redirects?</a>
      */
-    Mono<String> getAsync(URL url) {
-        return webClient
+    Mono<Modified<DataBuffer>> getAsync(URL url, ByteBudget.Reservation reservation) {
+        final String key = url.toString();
+        final Validators known = validators.get(key);
+        return hostLimiter.limit(url.getHost(), webClient
                 .get()
-                .uri(url.toString())
-                .retrieve()
-                .bodyToMono(String.class);
+                .uri(key)
+                .headers(headers -> {
+                    if (known != null && known.etag != null) {
+                        headers.setIfNoneMatch(known.etag);
+                    }
+                    if (known != null && known.lastModified != null) {
+                        headers.set(HttpHeaders.IF_MODIFIED_SINCE, known.lastModified);
+                    }
+                })
+                .exchangeToMono(response -> {
+                    if (response.statusCode() == HttpStatus.NOT_MODIFIED) {
+                        log.debug("Not modified: {}", key);
+                        return response.releaseBody().then(Mono.empty());
+                    }
+                    if (response.statusCode().isError()) {
+                        return response.createException().flatMap(Mono::error);
+                    }
+                    final HttpHeaders headers = response.headers().asHttpHeaders();
+                    final Validators received = new Validators(headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+                    final long contentLength = headers.getContentLength();
+                    if (contentLength > MAX_FEED_SIZE) {
+                        return response.releaseBody().then(Mono.error(new DataBufferLimitException(
+                                "Feed " + key + " has " + contentLength + " bytes, limit is " + MAX_FEED_SIZE)));
+                    }
+                    final Flux<DataBuffer> body = reservation
+                            .acquire(contentLength >= 0 ? contentLength : ByteBudget.DEFAULT_ESTIMATE)
+                            .thenMany(response.bodyToFlux(DataBuffer.class))
+                            // next chunk is requested only once budget covers everything received so far
+                            .concatMap(chunk -> Mono
+                                    .just(chunk)
+                                    .concatWith(reservation.received(chunk.readableByteCount()).then(Mono.<DataBuffer>empty())), 1);
+                    return DataBufferUtils
+                            .join(body, MAX_FEED_SIZE)
+                            .doOnNext(joined -> bytesDownloaded.addAndGet(joined.readableByteCount()))
+                            .map(joined -> new Modified<>(joined, received));
+                }));
+    }
+
+    long bytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    long parses() {
+        return parses.get();
+    }
+
+    /**
+     * Validators last {@link #remember(String, Validators) remembered} for <code>feed</code>, <code>null</code> if none
+     */
+    Validators validators(String feed) {
+        return validators.get(feed);
+    }
+
+    /**
+     * Use <code>known</code> validators, e.g. received with a fetch that was fully processed or obtained from another instance,
+     * in next fetch of <code>feed</code>
+     */
+    void remember(String feed, Validators known) {
+        if (known.etag != null || known.lastModified != null) {
+            validators.put(feed, known);
+        } else {
+            validators.remove(feed);
+        }
+    }
+
+    static class Validators {
+        private final String etag;
+        private final String lastModified;
+
+        Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        String getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Content of a changed feed and validators to send next time to learn whether it changed again
+     */
+    static class Modified<T> {
+        private final T content;
+        private final Validators validators;
+
+        Modified(T content, Validators validators) {
+            this.content = content;
+            this.validators = validators;
+        }
+
+        T getContent() {
+            return content;
+        }
+
+        Validators getValidators() {
+            return validators;
+        }
     }
 
 }
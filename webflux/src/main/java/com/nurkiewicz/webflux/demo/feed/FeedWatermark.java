@@ -0,0 +1,81 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * High-water mark of a single feed: what was already stored, so that unchanged entries never reach Mongo.
+ * An article is known if its link was seen recently. Publication dates are not trusted for that,
+ * a new entry may well be backdated before everything else in the feed.
+ */
+public class FeedWatermark {
+
+    static final int MAX_RECENT_LINKS = 512;
+
+    @Id
+    private final String feed;
+
+    /**
+     * Links from most recent fetches, oldest first, at most {@link #MAX_RECENT_LINKS}
+     */
+    private final List<String> recentLinks;
+
+    @Transient
+    private Set<String> recentLinksSet;
+
+    public FeedWatermark(String feed, List<String> recentLinks) {
+        this.feed = feed;
+        this.recentLinks = recentLinks;
+    }
+
+    static FeedWatermark empty(String feed) {
+        return new FeedWatermark(feed, List.of());
+    }
+
+    public String getFeed() {
+        return feed;
+    }
+
+    public List<String> getRecentLinks() {
+        return recentLinks;
+    }
+
+    boolean isKnown(Article article) {
+        if (recentLinksSet == null) {
+            recentLinksSet = Set.copyOf(recentLinks);
+        }
+        return recentLinksSet.contains(article.getLink().toString());
+    }
+
+    /**
+     * Links of <code>fetched</code> become the most recent ones, links of entries no longer in the feed are kept
+     * only as long as there is room.
+     *
+     * @param fetched all articles in the feed just fetched and stored
+     * @return <code>this</code> if nothing changed, so there is no need to persist
+     */
+    FeedWatermark advance(Collection<Article> fetched) {
+        if (fetched.isEmpty()) {
+            return this;
+        }
+        final Set<String> links = new LinkedHashSet<>(recentLinks);
+        for (Article article : fetched) {
+            final String link = article.getLink().toString();
+            links.remove(link);
+            links.add(link);
+        }
+        final List<String> trimmed = new ArrayList<>(links);
+        final List<String> newRecent = trimmed.subList(Math.max(0, trimmed.size() - MAX_RECENT_LINKS), trimmed.size());
+        if (newRecent.equals(recentLinks)) {
+            return this;
+        }
+        return new FeedWatermark(feed, List.copyOf(newRecent));
+    }
+
+}
@@ -0,0 +1,6 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface FeedWatermarkRepository extends ReactiveMongoRepository<FeedWatermark, String> {
+}
@@ -0,0 +1,193 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Politeness towards feed hosts: at most <code>maxConcurrency</code> requests in flight per host
+ * and at least <code>minInterval</code> between starts of consecutive requests to the same host.
+ * Requests over the limit wait (without blocking any thread) in FIFO order.
+ * <p>
+ * Connection pool limits alone are not enough: pool is per remote address, so a host behind several
+ * addresses gets several pools, and pool does not space requests out in time.
+ */
+@Component
+class HostLimiter {
+
+    private final int maxConcurrency;
+    private final long minIntervalNanos;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong delayed = new AtomicLong();
+
+    HostLimiter(
+            @Value("${feed.per-host.max-concurrency:4}") int maxConcurrency,
+            @Value("${feed.per-host.min-interval:100ms}") Duration minInterval) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive, got " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.minIntervalNanos = minInterval.toNanos();
+        Metrics.gauge("feed.host.limiter.waiting", waiting);
+    }
+
+    /**
+     * Subscribes to <code>call</code> once a permit for <code>host</code> is available and rate limit allows.
+     * Permit is returned when <code>call</code> completes, fails or is cancelled.
+     */
+    <T> Mono<T> limit(String host, Mono<T> call) {
+        return Mono.usingWhen(
+                Mono.defer(() -> hosts.computeIfAbsent(host, h -> new Host()).acquire()),
+                permit -> permit.delay.isZero() ?
+                        call :
+                        Mono.delay(permit.delay).then(call),
+                permit -> Mono.fromRunnable(permit::release));
+    }
+
+    /**
+     * Requests currently waiting for a permit, across all hosts
+     */
+    int waiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Requests that had to wait before starting due to rate limit
+     */
+    long delayed() {
+        return delayed.get();
+    }
+
+    private class Host {
+
+        private final Deque<Waiter> queue = new ArrayDeque<>();
+        private int active;
+        private long nextStart = System.nanoTime();
+
+        Mono<Permit> acquire() {
+            return Mono.create(sink -> {
+                final Permit permit;
+                final Waiter waiter;
+                synchronized (this) {
+                    if (active < maxConcurrency) {
+                        active++;
+                        permit = grant();
+                        waiter = null;
+                    } else {
+                        permit = null;
+                        waiter = new Waiter(sink);
+                        queue.add(waiter);
+                        waiting.incrementAndGet();
+                    }
+                }
+                if (permit != null) {
+                    sink.success(permit);
+                } else {
+                    sink.onCancel(waiter::cancel);
+                }
+            });
+        }
+
+        /**
+         * Hands the permit over to the first waiter still interested, or frees it
+         */
+        void release() {
+            while (true) {
+                final Waiter next;
+                final Permit permit;
+                synchronized (this) {
+                    next = queue.poll();
+                    if (next == null) {
+                        active--;
+                        return;
+                    }
+                    permit = grant();
+                }
+                if (next.offer(permit)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Must be called while holding the lock, reserves the next start slot
+         */
+        private Permit grant() {
+            final long now = System.nanoTime();
+            final long start = Math.max(now, nextStart);
+            nextStart = start + minIntervalNanos;
+            if (start > now) {
+                delayed.incrementAndGet();
+            }
+            return new Permit(this, Duration.ofNanos(start - now));
+        }
+    }
+
+    private class Waiter {
+
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final MonoSink<Permit> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile Permit permit;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * @return <code>false</code> if waiter was cancelled in the meantime, permit must go to someone else
+         */
+        boolean offer(Permit permit) {
+            this.permit = permit;
+            if (!state.compareAndSet(WAITING, GRANTED)) {
+                return false;
+            }
+            waiting.decrementAndGet();
+            sink.success(permit);
+            return true;
+        }
+
+        void cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                waiting.decrementAndGet();
+            } else {
+                // Granted, but subscriber may have gone before receiving it. Release is idempotent.
+                permit.release();
+            }
+        }
+    }
+
+    private static class Permit {
+
+        private final Host host;
+        private final Duration delay;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Host host, Duration delay) {
+            this.host = host;
+            this.delay = delay;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                host.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * {@link #CAPACITY} newest articles, loaded from Mongo on startup and then kept current by {@link FeedAggregator}
+ * with articles stored by this instance. Articles stored by other instances arrive through {@link ArticleChangeStream}
+ * when enabled, otherwise newest articles are reloaded from Mongo every {@link #REFRESH_INTERVAL}.
+ * So web-only instances and instances ingesting only their share of feeds serve everything.
+ * Readers get an immutable snapshot without locking.
+ */
+@Component
+public class NewestArticles {
+
+    private static final Logger log = LoggerFactory.getLogger(NewestArticles.class);
+
+    static final int CAPACITY = 100;
+
+    static final Duration REFRESH_INTERVAL = Duration.ofSeconds(5);
+
+    private static final Comparator<Article> NEWEST_FIRST = Comparator
+            .comparing(Article::getPublishedDate, Comparator.reverseOrder())
+            .thenComparing(Article::getLink);
+
+    private final ArticleRepository articleRepository;
+    private final ArticleChangeStream articleChangeStream;
+    private final boolean useChangeStream;
+    private final TreeSet<Article> newest = new TreeSet<>(NEWEST_FIRST);
+    private volatile List<Article> snapshot = List.of();
+    private volatile boolean loaded;
+    private Disposable subscription;
+
+    public NewestArticles(
+            ArticleRepository articleRepository,
+            ArticleChangeStream articleChangeStream,
+            @Value("${articles.change-stream.enabled:false}") boolean useChangeStream
+    ) {
+        this.articleRepository = articleRepository;
+        this.articleChangeStream = articleChangeStream;
+        this.useChangeStream = useChangeStream;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (useChangeStream) {
+            subscription = articleChangeStream
+                    .newArticles()
+                    .doOnNext(article -> addAll(List.of(article)))
+                    .then()
+                    .mergeWith(load())
+                    .subscribe();
+        } else {
+            subscription = load()
+                    .thenMany(Flux.interval(REFRESH_INTERVAL))
+                    .onBackpressureDrop()
+                    .concatMap(tick -> load())
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        subscription.dispose();
+    }
+
+    /**
+     * Until the first load succeeds, {@link #newest(int)} is served from database
+     */
+    private Mono<Void> load() {
+        return articleRepository
+                .findAllByOrderByPublishedDateDesc(PageRequest.of(0, CAPACITY))
+                .collectList()
+                .doOnNext(articles -> {
+                    addAll(articles);
+                    loaded = true;
+                    log.debug("Loaded {} newest articles", articles.size());
+                })
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Unable to load newest articles", e);
+                    return Mono.empty();
+                });
+    }
+
+    void addAll(Collection<Article> articles) {
+        if (articles.isEmpty()) {
+            return;
+        }
+        synchronized (newest) {
+            for (Article article : articles) {
+                newest.add(article);
+                if (newest.size() > CAPACITY) {
+                    newest.pollLast();
+                }
+            }
+            snapshot = List.copyOf(newest);
+        }
+    }
+
+    /**
+     * @return empty if <code>limit</code> exceeds {@link #CAPACITY} or initial load has not completed yet
+     */
+    Optional<List<Article>> newest(int limit) {
+        if (!loaded || limit > CAPACITY) {
+            return Optional.empty();
+        }
+        final List<Article> current = snapshot;
+        return Optional.of(current.subList(0, Math.min(limit, current.size())));
+    }
+
+}
@@ -4,42 +4,175 @@ import com.rometools.opml.feed.opml.Opml;
 import com.rometools.opml.feed.opml.Outline;
 import com.rometools.rome.io.FeedException;
 import com.rometools.rome.io.WireFeedInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Set;
+import java.util.zip.CRC32;
 
+/**
+ * Reads feed list from OPML file, either from classpath (e.g. <code>/feed-en.xml</code>)
+ * or from file system (e.g. <code>file:/etc/feeds.xml</code>).
+ * <p>
+ * Parsed outlines are cached and only parsed again when the source changes:
+ * file modification time or size for file system, checksum of contents for classpath.
+ */
 @Component
 public class OpmlReader {
 
+    private static final Logger log = LoggerFactory.getLogger(OpmlReader.class);
+
+    private static final String FILE_PREFIX = "file:";
+
     public final String feedFile;
 
+    private String sourceVersion;
+    private FeedList feedList;
+
     public OpmlReader(@Value("${feed-file}") String feedFile) {
         this.feedFile = feedFile;
     }
 
     public Flux<Outline> allFeedsStream() {
-        return Mono.fromCallable(this::allFeeds)
-                .flatMapIterable(Function.identity());
+        return feedList().flatMapIterable(FeedList::getOutlines);
+    }
+
+    /**
+     * Current feed list with differences from the previous one. Cheap when OPML did not change.
+     */
+    public Mono<FeedList> feedList() {
+        return Mono
+                .fromCallable(this::current)
+                .subscribeOn(Schedulers.boundedElastic());
     }
 
     public List<Outline> allFeeds() throws FeedException, IOException {
-        WireFeedInput input = new WireFeedInput();
+        return current().getOutlines();
+    }
+
+    private synchronized FeedList current() throws FeedException, IOException {
+        if (feedFile.startsWith(FILE_PREFIX)) {
+            final Path path = Paths.get(feedFile.substring(FILE_PREFIX.length()));
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            final String version = attributes.lastModifiedTime() + "/" + attributes.size();
+            if (!version.equals(sourceVersion)) {
+                reload(Files.readAllBytes(path), version);
+            }
+        } else {
+            final byte[] opml = readClasspath();
+            final CRC32 checksum = new CRC32();
+            checksum.update(opml);
+            final String version = Long.toHexString(checksum.getValue());
+            if (!version.equals(sourceVersion)) {
+                reload(opml, version);
+            }
+        }
+        return feedList;
+    }
+
+    private byte[] readClasspath() throws IOException {
         try (final InputStream inputStream = OpmlReader.class.getResourceAsStream(feedFile)) {
-            assert inputStream != null;
-            final InputStreamReader streamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-            final Reader reader = new BufferedReader(streamReader);
-            Opml feed = (Opml) input.build(reader);
-            return feed.getOutlines();
+            if (inputStream == null) {
+                throw new FileNotFoundException(feedFile);
+            }
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private void reload(byte[] opml, String version) throws FeedException {
+        final WireFeedInput input = new WireFeedInput();
+        final Opml feed = (Opml) input.build(new InputStreamReader(new ByteArrayInputStream(opml), StandardCharsets.UTF_8));
+        final List<Outline> outlines = feed.getOutlines();
+        feedList = feedList == null ? FeedList.initial(outlines) : feedList.next(outlines);
+        sourceVersion = version;
+        log.info("Loaded {} feeds from {}, {} added, {} removed",
+                outlines.size(), feedFile, feedList.getAdded().size(), feedList.getRemoved().size());
+    }
+
+    /**
+     * Immutable snapshot of OPML. {@link #getAdded()} and {@link #getRemoved()} are relative to
+     * the snapshot with version one less, so consumers that saw it can apply the change incrementally.
+     */
+    public static class FeedList {
+
+        private final long version;
+        private final List<Outline> outlines;
+        private final Set<String> feeds;
+        private final Set<String> added;
+        private final Set<String> removed;
+
+        private FeedList(long version, List<Outline> outlines, Set<String> feeds, Set<String> added, Set<String> removed) {
+            this.version = version;
+            this.outlines = outlines;
+            this.feeds = feeds;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        static FeedList initial(List<Outline> outlines) {
+            final Set<String> feeds = urlsOf(outlines);
+            return new FeedList(1, List.copyOf(outlines), feeds, feeds, Set.of());
+        }
+
+        FeedList next(List<Outline> newOutlines) {
+            final Set<String> newFeeds = urlsOf(newOutlines);
+            final Set<String> added = new HashSet<>(newFeeds);
+            added.removeAll(feeds);
+            final Set<String> removed = new HashSet<>(feeds);
+            removed.removeAll(newFeeds);
+            return new FeedList(version + 1, List.copyOf(newOutlines), newFeeds, Set.copyOf(added), Set.copyOf(removed));
+        }
+
+        /**
+         * Outlines without <code>xmlUrl</code>, e.g. categories, are not feeds
+         */
+        private static Set<String> urlsOf(List<Outline> outlines) {
+            final Set<String> urls = new LinkedHashSet<>();
+            for (Outline outline : outlines) {
+                if (outline.getXmlUrl() != null) {
+                    urls.add(outline.getXmlUrl());
+                }
+            }
+            return Collections.unmodifiableSet(urls);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<Outline> getOutlines() {
+            return outlines;
+        }
+
+        public Set<String> getFeeds() {
+            return feeds;
+        }
+
+        public Set<String> getAdded() {
+            return added;
+        }
+
+        public Set<String> getRemoved() {
+            return removed;
         }
     }
 
@@ -0,0 +1,218 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * When to poll each feed next, learned from how often it publishes.
+ * <p>
+ * Active feeds are polled about twice per their average gap between entries (but not more often than
+ * {@link #MIN_INTERVAL}). Every poll that brings nothing new, or fails, stretches the interval by
+ * {@link #BACKOFF} up to {@link #MAX_INTERVAL}. Every next poll time is randomly shifted by up to
+ * {@link #JITTER} so that feeds added together do not stay in lockstep.
+ * <p>
+ * Due feeds are kept in a priority queue ordered by next poll time, <code>O(log n)</code> per feed.
+ * Removed feeds are only marked and skipped when they come up. Thread safe.
+ */
+class PollSchedule {
+
+    static final Duration MIN_INTERVAL = Duration.ofSeconds(30);
+    static final Duration MAX_INTERVAL = Duration.ofHours(6);
+
+    private static final double BACKOFF = 1.5;
+    private static final double FAILURE_BACKOFF = 2;
+    private static final double JITTER = 0.1;
+
+    /**
+     * Weight of the newest observation in exponential moving average of publication gap
+     */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * Polls per average publication gap
+     */
+    private static final double POLLS_PER_GAP = 2;
+
+    /**
+     * Only that many newest entries are taken into account when estimating publication gap
+     */
+    private static final int RECENT_ENTRIES = 10;
+
+    private final Random random;
+    private final Map<String, Entry> feeds = new HashMap<>();
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparing(entry -> entry.nextPoll));
+
+    PollSchedule(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * New feeds are due immediately, feeds not in <code>all</code> are removed
+     */
+    synchronized void update(Collection<String> all, Instant now) {
+        final List<String> removed = new ArrayList<>();
+        for (String feed : feeds.keySet()) {
+            if (!all.contains(feed)) {
+                removed.add(feed);
+            }
+        }
+        removed.forEach(this::remove);
+        all.forEach(feed -> add(feed, now));
+    }
+
+    synchronized void add(String feed, Instant now) {
+        if (!feeds.containsKey(feed)) {
+            final Entry entry = new Entry(feed, now);
+            feeds.put(feed, entry);
+            entry.queued = true;
+            queue.add(entry);
+        }
+    }
+
+    synchronized void remove(String feed) {
+        final Entry entry = feeds.remove(feed);
+        if (entry != null) {
+            entry.removed = true;
+        }
+    }
+
+    /**
+     * Takes all feeds due at <code>now</code> off the schedule. Each of them must be put back with
+     * {@link #completed(String, Instant, boolean, Collection)}, {@link #failed(String, Instant)},
+     * {@link #skipped(String, Instant)} or {@link #postponed(String, Instant, Instant)}, so a feed is never polled again while the previous poll is in progress.
+     */
+    synchronized List<String> due(Instant now) {
+        final List<String> due = new ArrayList<>();
+        while (!queue.isEmpty() && !queue.peek().nextPoll.isAfter(now)) {
+            final Entry entry = queue.poll();
+            entry.queued = false;
+            if (!entry.removed) {
+                due.add(entry.feed);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @param changed whether anything new was found
+     * @param entries publication dates of all entries in the feed, to learn how often it publishes
+     * @return next poll time
+     */
+    synchronized Instant completed(String feed, Instant now, boolean changed, Collection<Instant> entries) {
+        final Entry entry = inProgress(feed);
+        if (entry == null) {
+            return now.plus(MAX_INTERVAL);
+        }
+        final double gap = publicationGapSeconds(entries);
+        if (!Double.isNaN(gap)) {
+            entry.gapSeconds = Double.isNaN(entry.gapSeconds) ? gap : SMOOTHING * gap + (1 - SMOOTHING) * entry.gapSeconds;
+        }
+        if (changed) {
+            entry.intervalSeconds = Double.isNaN(entry.gapSeconds) ?
+                    MIN_INTERVAL.toSeconds() :
+                    entry.gapSeconds / POLLS_PER_GAP;
+        } else {
+            entry.intervalSeconds *= BACKOFF;
+        }
+        return reschedule(entry, now);
+    }
+
+    synchronized Instant failed(String feed, Instant now) {
+        final Entry entry = inProgress(feed);
+        if (entry == null) {
+            return now.plus(MAX_INTERVAL);
+        }
+        entry.intervalSeconds *= FAILURE_BACKOFF;
+        return reschedule(entry, now);
+    }
+
+    /**
+     * Polled by someone else this time, keep current interval
+     */
+    synchronized Instant skipped(String feed, Instant now) {
+        final Entry entry = inProgress(feed);
+        if (entry == null) {
+            return now.plus(MAX_INTERVAL);
+        }
+        return reschedule(entry, now);
+    }
+
+    /**
+     * Polled by someone else recently, who scheduled next poll at <code>nextPoll</code>: follow that schedule,
+     * keep current interval. Never later than {@link #MAX_INTERVAL} from <code>now</code>.
+     */
+    synchronized Instant postponed(String feed, Instant now, Instant nextPoll) {
+        final Entry entry = inProgress(feed);
+        if (entry == null) {
+            return now.plus(MAX_INTERVAL);
+        }
+        final Instant latest = now.plus(MAX_INTERVAL);
+        entry.nextPoll = nextPoll.isAfter(latest) ? latest : nextPoll;
+        entry.queued = true;
+        queue.add(entry);
+        return entry.nextPoll;
+    }
+
+    synchronized Duration interval(String feed) {
+        return Duration.ofMillis(Math.round(feeds.get(feed).intervalSeconds * 1000));
+    }
+
+    synchronized int size() {
+        return feeds.size();
+    }
+
+    /**
+     * <code>null</code> if feed was removed (and maybe added again) in the meantime
+     */
+    private Entry inProgress(String feed) {
+        final Entry entry = feeds.get(feed);
+        return entry == null || entry.queued ? null : entry;
+    }
+
+    private Instant reschedule(Entry entry, Instant now) {
+        entry.intervalSeconds = Math.max(MIN_INTERVAL.toSeconds(), Math.min(MAX_INTERVAL.toSeconds(), entry.intervalSeconds));
+        final double jitter = 1 + JITTER * (2 * random.nextDouble() - 1);
+        entry.nextPoll = now.plusMillis(Math.round(entry.intervalSeconds * jitter * 1000));
+        entry.queued = true;
+        queue.add(entry);
+        return entry.nextPoll;
+    }
+
+    /**
+     * Average gap between {@link #RECENT_ENTRIES} newest entries, <code>NaN</code> if fewer than two
+     */
+    private static double publicationGapSeconds(Collection<Instant> entries) {
+        if (entries.size() < 2) {
+            return Double.NaN;
+        }
+        final List<Instant> newest = new ArrayList<>(entries);
+        newest.sort(Comparator.reverseOrder());
+        final List<Instant> recent = newest.subList(0, Math.min(RECENT_ENTRIES, newest.size()));
+        final Instant first = recent.get(recent.size() - 1);
+        final Instant last = recent.get(0);
+        return Duration.between(first, last).toMillis() / 1000.0 / (recent.size() - 1);
+    }
+
+    private static class Entry {
+        private final String feed;
+        private Instant nextPoll;
+        private double intervalSeconds = MIN_INTERVAL.toSeconds();
+        private double gapSeconds = Double.NaN;
+        private boolean removed;
+        private boolean queued;
+
+        Entry(String feed, Instant nextPoll) {
+            this.feed = feed;
+            this.nextPoll = nextPoll;
+        }
+    }
+
+}
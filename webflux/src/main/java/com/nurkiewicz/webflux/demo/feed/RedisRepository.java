@@ -1,15 +1,114 @@
 package com.nurkiewicz.webflux.demo.feed;
 
+import org.springframework.data.domain.Range;
 import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Per-feed state shared by all aggregator instances:
+ * <ul>
+ *     <li><code>feed:{url}</code> - hash with {@link FeedMetadata}</li>
+ *     <li><code>feed:{url}:links</code> - sorted set of recent article links, scored by publication time</li>
+ *     <li><code>feed:{url}:lease</code> - owner of the current fetch, expires by itself</li>
+ * </ul>
+ */
 @Repository
 public class RedisRepository {
 
+    static final int MAX_RECENT_LINKS = FeedWatermark.MAX_RECENT_LINKS;
+
+    /**
+     * Forget feeds no longer fetched by anyone
+     */
+    private static final Duration STATE_TTL = Duration.ofDays(7);
+
+    private static final RedisScript<Long> LEASE = RedisScript.of(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 1 end " +
+                    "if redis.call('get', KEYS[1]) == ARGV[1] then redis.call('pexpire', KEYS[1], ARGV[2]) return 1 end " +
+                    "return 0",
+            Long.class);
+
     private final ReactiveStringRedisTemplate redis;
 
     public RedisRepository(ReactiveStringRedisTemplate redis) {
         this.redis = redis;
     }
 
+    Mono<FeedMetadata> metadata(String feed) {
+        return redis
+                .<String, String>opsForHash()
+                .entries(metadataKey(feed))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .filter(map -> !map.isEmpty())
+                .map(FeedMetadata::fromMap);
+    }
+
+    Mono<Boolean> saveMetadata(String feed, FeedMetadata metadata) {
+        final String key = metadataKey(feed);
+        return redis
+                .<String, String>opsForHash()
+                .putAll(key, metadata.toMap())
+                .then(redis.expire(key, STATE_TTL));
+    }
+
+    Mono<Set<String>> recentLinks(String feed) {
+        return redis
+                .opsForZSet()
+                .range(linksKey(feed), Range.unbounded())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Keeps only {@link #MAX_RECENT_LINKS} most recently published
+     */
+    Mono<Boolean> addRecentLinks(String feed, Collection<Article> articles) {
+        if (articles.isEmpty()) {
+            return Mono.just(false);
+        }
+        final String key = linksKey(feed);
+        final List<TypedTuple<String>> links = articles
+                .stream()
+                .map(article -> TypedTuple.of(article.getLink().toString(), (double) article.getPublishedDate().toEpochMilli()))
+                .collect(Collectors.toList());
+        return redis
+                .opsForZSet()
+                .addAll(key, links)
+                .then(redis.opsForZSet().removeRange(key, Range.closed(0L, -(MAX_RECENT_LINKS + 1L))))
+                .then(redis.expire(key, STATE_TTL));
+    }
+
+    /**
+     * At most one <code>owner</code> at a time gets <code>true</code> for given <code>feed</code>, until <code>ttl</code> passes.
+     * Current owner may renew it. Lease is never released explicitly,
+     * so that no other instance fetches the same feed again within <code>ttl</code>.
+     */
+    Mono<Boolean> tryLease(String feed, String owner, Duration ttl) {
+        return redis
+                .execute(LEASE, List.of(leaseKey(feed)), List.of(owner, String.valueOf(ttl.toMillis())))
+                .next()
+                .map(result -> result == 1L);
+    }
+
+    private static String metadataKey(String feed) {
+        return "feed:" + feed;
+    }
+
+    private static String linksKey(String feed) {
+        return "feed:" + feed + ":links";
+    }
+
+    private static String leaseKey(String feed) {
+        return "feed:" + feed + ":lease";
+    }
+
 }
@@ -0,0 +1,31 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import org.springframework.data.annotation.Id;
+
+/**
+ * Last change stream resume token processed by given node
+ */
+public class StreamPosition {
+
+    @Id
+    private final String node;
+
+    /**
+     * Resume token as extended JSON
+     */
+    private final String resumeToken;
+
+    public StreamPosition(String node, String resumeToken) {
+        this.node = node;
+        this.resumeToken = resumeToken;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+}
@@ -3,12 +3,12 @@ package com.nurkiewicz.webflux.demo.websocket;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketHandler;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
-import reactor.core.publisher.Flux;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 /**
  * TODO
@@ -19,27 +19,61 @@ import reactor.core.publisher.Sinks;
  *     <li>Add some logging: connecting/disconnecting, how many subscribers</li>
  * </ol>
  * Hint: Sink should hold {@link String}s, not {@link WebSocketMessage}s
+ * <p>
+ * Room is chosen with <code>?room=</code> query parameter. Broadcasting, history and slow consumers
+ * are handled by {@link ChatHub}. Messages arrive already encoded, so they are sent as they are
+ * rather than through <code>session.textMessage()</code>, which would encode them again for every session.
  */
 public class ChatHandler implements WebSocketHandler {
 
     private static final Logger log = LoggerFactory.getLogger(ChatHandler.class);
 
-	private final Sinks.Many<String> sink = Sinks.many().replay().limit(5);
+    static final String DEFAULT_ROOM = "general";
+    private static final CloseStatus TOO_SLOW = CloseStatus.POLICY_VIOLATION.withReason("Too slow");
 
+    private final ChatHub hub;
+
+    public ChatHandler(ChatHub hub) {
+        this.hub = hub;
+    }
+
+    /**
+     * Session ends when client disconnects, when sending fails or when client is evicted for not keeping up.
+     * In every case it leaves the room.
+     */
     @Override
     public @NotNull Mono<Void> handle(WebSocketSession session) {
-        //noinspection CallingSubscribeInNonBlockingScope
-        session.receive()
-				.map(WebSocketMessage::getPayloadAsText)
-				.doOnNext(x -> log.info("[{}] Received: '{}'", session.getId(), x))
-				.subscribe(sink::tryEmitNext);
-
-        final Flux<WebSocketMessage> outMessages = sink.asFlux()
-                .map(session::textMessage)
-                .doOnSubscribe(s -> log.info("Got new connection {}", session))
-                .doOnComplete(() -> log.info("Connection completed {}", session));
-
-        return session.send(outMessages);
+        final String room = room(session);
+        final ChatHub.Member member = hub.join(room);
+        log.info("[{}] Got new connection to {}, {} members", session.getId(), room, hub.members());
+
+        final Mono<Void> incoming = session.receive()
+                .map(WebSocketMessage::getPayloadAsText)
+                .doOnNext(x -> log.debug("[{}] Received: '{}'", session.getId(), x))
+                .doOnNext(x -> hub.publish(room, x))
+                .then();
+        final Mono<Void> outgoing = session.send(member
+                .messages()
+                .map(encoded -> new WebSocketMessage(WebSocketMessage.Type.TEXT, encoded)));
+        final Mono<Void> evicted = member
+                .evicted()
+                .then(Mono.defer(() -> session.close(TOO_SLOW)));
+
+        return Mono
+                .firstWithSignal(incoming, outgoing, evicted)
+                .doFinally(signal -> {
+                    member.leave();
+                    log.info("[{}] Connection to {} completed ({})", session.getId(), room, signal);
+                });
+    }
+
+    private static String room(WebSocketSession session) {
+        final String room = UriComponentsBuilder
+                .fromUri(session.getHandshakeInfo().getUri())
+                .build()
+                .getQueryParams()
+                .getFirst("room");
+        return room == null || room.isBlank() ? DEFAULT_ROOM : room;
     }
 
 }
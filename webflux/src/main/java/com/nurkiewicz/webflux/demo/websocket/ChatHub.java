@@ -0,0 +1,350 @@
+package com.nurkiewicz.webflux.demo.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Broadcasts chat messages to all members of a room.
+ * <p>
+ * Rooms are spread across shards. Every shard owns its rooms exclusively: joins, leaves and messages
+ * are offered to shard's lock-free multi-producer queue from any thread and applied one by one
+ * by a single drain loop running on shard's own thread. So room state needs no locking,
+ * every member of a room sees messages in the same order, and nothing is lost to concurrent emission.
+ * <p>
+ * Each member has a bounded outbound queue. A member whose queue is full is evicted,
+ * so a slow consumer never holds back the rest of the room or grows memory without bound.
+ * New members receive last few messages of the room. Room (with its history) is forgotten once empty.
+ * <p>
+ * Every message is UTF-8 encoded once, when published. Members receive {@link DataBuffer#retainedSlice(int, int) retained slices}
+ * of that single buffer: shared content, own read position, one more reference each.
+ * Whoever ends up holding a slice releases it: WebSocket transport after writing the frame,
+ * outbound queue when its subscriber cancels, hub when the queue refuses it.
+ * The original reference belongs to room history (or is released right after broadcast when history is disabled).
+ */
+public class ChatHub implements Disposable {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatHub.class);
+
+    private final int historySize;
+    private final int queueSize;
+    private final DataBufferFactory bufferFactory;
+    private final Shard[] shards;
+    private final Scheduler scheduler;
+    private final AtomicInteger memberCount = new AtomicInteger();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public ChatHub(int shards, int history, int queueSize, DataBufferFactory bufferFactory) {
+        this.historySize = history;
+        this.queueSize = queueSize;
+        this.bufferFactory = bufferFactory;
+        this.scheduler = Schedulers.newParallel("chat-hub", shards);
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(scheduler.createWorker());
+        }
+    }
+
+    /**
+     * New member of <code>room</code>. Starts receiving messages immediately, must {@link Member#leave() leave} eventually.
+     */
+    public Member join(String room) {
+        final Member member = new Member(room, queueSize);
+        memberCount.incrementAndGet();
+        shard(room).offer(new Join(member));
+        return member;
+    }
+
+    public void publish(String room, String message) {
+        final DataBuffer encoded = bufferFactory
+                .allocateBuffer(message.length())
+                .write(message, UTF_8);
+        shard(room).offer(new Message(room, encoded));
+    }
+
+    /**
+     * Members currently connected, across all rooms
+     */
+    public int members() {
+        return memberCount.get();
+    }
+
+    /**
+     * Members evicted so far because they could not keep up
+     */
+    public long evicted() {
+        return evicted.get();
+    }
+
+    @Override
+    public void dispose() {
+        scheduler.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return scheduler.isDisposed();
+    }
+
+    private Shard shard(String room) {
+        return shards[Math.floorMod(room.hashCode(), shards.length)];
+    }
+
+    public class Member {
+
+        private final String room;
+        private final Sinks.Many<DataBuffer> outbound;
+        private final Sinks.Empty<Void> evictedSink = Sinks.empty();
+        private boolean left;
+
+        private Member(String room, int queueSize) {
+            this.room = room;
+            this.outbound = Sinks.many().unicast().onBackpressureBuffer(Queues.<DataBuffer>get(queueSize).get());
+        }
+
+        public String room() {
+            return room;
+        }
+
+        /**
+         * UTF-8 encoded messages for this member, at most one subscriber. Subscriber must release every buffer.
+         */
+        public Flux<DataBuffer> messages() {
+            return outbound
+                    .asFlux()
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        }
+
+        /**
+         * Completes when this member was evicted for being too slow
+         */
+        public Mono<Void> evicted() {
+            return evictedSink.asMono();
+        }
+
+        /**
+         * Idempotent
+         */
+        public void leave() {
+            shard(room).offer(new Leave(this));
+        }
+    }
+
+    private class Shard {
+
+        private final Queue<Command> ingress = Queues.<Command>unboundedMultiproducer().get();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final Scheduler.Worker worker;
+        private final Map<String, Room> rooms = new HashMap<>();
+
+        Shard(Scheduler.Worker worker) {
+            this.worker = worker;
+        }
+
+        void offer(Command command) {
+            ingress.offer(command);
+            if (wip.getAndIncrement() == 0) {
+                worker.schedule(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                Command command;
+                while ((command = ingress.poll()) != null) {
+                    try {
+                        command.apply(this);
+                    } catch (RuntimeException e) {
+                        log.error("Unable to apply {}", command, e);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        void join(Member member) {
+            if (member.left) {
+                return;
+            }
+            final Room room = rooms.computeIfAbsent(member.room, name -> new Room());
+            room.members.add(member);
+            for (DataBuffer message : room.history) {
+                if (!deliver(member, message)) {
+                    evict(room, member);
+                    return;
+                }
+            }
+            log.debug("Joined {}, {} members in room, {} in total", member.room, room.members.size(), memberCount.get());
+        }
+
+        void leave(Member member) {
+            if (member.left) {
+                return;
+            }
+            member.left = true;
+            memberCount.decrementAndGet();
+            member.outbound.tryEmitComplete();
+            releaseIfNeverSubscribed(member);
+            final Room room = rooms.get(member.room);
+            if (room != null) {
+                room.members.remove(member);
+                removeIfEmpty(member.room, room);
+            }
+            log.debug("Left {}, {} members in total", member.room, memberCount.get());
+        }
+
+        void broadcast(String roomName, DataBuffer message) {
+            final Room room = rooms.computeIfAbsent(roomName, name -> new Room());
+            List<Member> slow = null;
+            for (Member member : room.members) {
+                if (!deliver(member, message)) {
+                    if (slow == null) {
+                        slow = new ArrayList<>();
+                    }
+                    slow.add(member);
+                }
+            }
+            if (slow != null) {
+                slow.forEach(member -> evict(room, member));
+            }
+            room.remember(message);
+            removeIfEmpty(roomName, room);
+        }
+
+        /**
+         * @return <code>false</code> if member's queue is full
+         */
+        private boolean deliver(Member member, DataBuffer message) {
+            final DataBuffer slice = message.retainedSlice(message.readPosition(), message.readableByteCount());
+            final Sinks.EmitResult result = member.outbound.tryEmitNext(slice);
+            if (result.isFailure()) {
+                DataBufferUtils.release(slice);
+            }
+            return result != Sinks.EmitResult.FAIL_OVERFLOW;
+        }
+
+        /**
+         * Member that left before anyone subscribed to its messages still holds queued slices.
+         * Unicast sink accepts one subscriber only, so this fails harmlessly if there already is one.
+         */
+        private void releaseIfNeverSubscribed(Member member) {
+            member.outbound.asFlux().subscribe(DataBufferUtils::release, e -> {});
+        }
+
+        private void evict(Room room, Member member) {
+            log.warn("Evicting slow member of {}", member.room);
+            evicted.incrementAndGet();
+            room.members.remove(member);
+            member.left = true;
+            memberCount.decrementAndGet();
+            member.evictedSink.tryEmitEmpty();
+            releaseIfNeverSubscribed(member);
+            removeIfEmpty(member.room, room);
+        }
+
+        private void removeIfEmpty(String name, Room room) {
+            if (room.members.isEmpty()) {
+                rooms.remove(name);
+                room.forget();
+            }
+        }
+
+        private class Room {
+
+            private final Set<Member> members = new LinkedHashSet<>();
+            private final Deque<DataBuffer> history = new ArrayDeque<>();
+
+            /**
+             * Takes over the reference to <code>message</code>
+             */
+            void remember(DataBuffer message) {
+                if (historySize == 0) {
+                    DataBufferUtils.release(message);
+                    return;
+                }
+                if (history.size() == historySize) {
+                    DataBufferUtils.release(history.removeFirst());
+                }
+                history.addLast(message);
+            }
+
+            void forget() {
+                history.forEach(DataBufferUtils::release);
+                history.clear();
+            }
+        }
+    }
+
+    private interface Command {
+        void apply(Shard shard);
+    }
+
+    private static class Join implements Command {
+
+        private final Member member;
+
+        Join(Member member) {
+            this.member = member;
+        }
+
+        @Override
+        public void apply(Shard shard) {
+            shard.join(member);
+        }
+    }
+
+    private static class Leave implements Command {
+
+        private final Member member;
+
+        Leave(Member member) {
+            this.member = member;
+        }
+
+        @Override
+        public void apply(Shard shard) {
+            shard.leave(member);
+        }
+    }
+
+    private static class Message implements Command {
+
+        private final String room;
+        private final DataBuffer message;
+
+        Message(String room, DataBuffer message) {
+            this.room = room;
+            this.message = message;
+        }
+
+        @Override
+        public void apply(Shard shard) {
+            shard.broadcast(room, message);
+        }
+    }
+
+}
@@ -2,8 +2,10 @@ package com.nurkiewicz.webflux.demo.websocket;
 
 import java.util.Map;
 
+import io.netty.buffer.PooledByteBufAllocator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import org.springframework.web.reactive.HandlerMapping;
 import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
 import org.springframework.web.reactive.socket.WebSocketHandler;
@@ -12,12 +14,15 @@ import org.springframework.web.reactive.socket.server.support.WebSocketHandlerAd
 @Configuration
 public class WebSocketConfiguration {
 
+    private static final int CHAT_HISTORY = 5;
+    private static final int CHAT_MEMBER_QUEUE_SIZE = 256;
+
     @Bean
-    public HandlerMapping handlerMapping() {
+    public HandlerMapping handlerMapping(ChatHub chatHub) {
         Map<String, WebSocketHandler> map = Map.of(
                 "/echo", new EchoHandler(),
                 "/time", new TimeHandler(),
-                "/chat", new ChatHandler()
+                "/chat", new ChatHandler(chatHub)
         );
         SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping();
         mapping.setUrlMap(map);
@@ -30,6 +35,15 @@ public class WebSocketConfiguration {
         return new WebSocketHandlerAdapter();
     }
 
+    @Bean(destroyMethod = "dispose")
+    public ChatHub chatHub() {
+        return new ChatHub(
+                Runtime.getRuntime().availableProcessors(),
+                CHAT_HISTORY,
+                CHAT_MEMBER_QUEUE_SIZE,
+                new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT));
+    }
+
 
 
 }
@@ -0,0 +1,144 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.ServerSentEvent;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class EmojiAggregateTest {
+
+	private static final Logger log = LoggerFactory.getLogger(EmojiAggregateTest.class);
+
+	/**
+	 * One hour of tracker at 5 events per second
+	 */
+	private static final int HOUR_OF_EVENTS = 5 * 3600;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final EmojiAggregate aggregate = new EmojiAggregate(silentTracker(), objectMapper);
+	private final EmojiEventDecoder decoder = new EmojiEventDecoder();
+
+	@Test
+	public void shouldSendSnapshotFollowedByChangedCountersOnly() throws IOException {
+		//given
+		aggregate.add(event("{\"1F606\":1,\"1F60E\":1}"));
+		List<ServerSentEvent<String>> received = new ArrayList<>();
+		Disposable client = aggregate.stream(null).subscribe(received::add);
+
+		//when
+		aggregate.add(event("{\"1F60E\":2,\"1F60A\":4}"));
+		aggregate.add(event("{\"1F606\":2}"));
+
+		//then
+		assertThat(received).extracting(ServerSentEvent::event).containsExactly("snapshot", "delta", "delta");
+		assertThat(data(received.get(0))).isEqualTo(Map.of("1F606", 1, "1F60E", 1));
+		assertThat(data(received.get(1))).isEqualTo(Map.of("1F60E", 3, "1F60A", 4));
+		assertThat(data(received.get(2))).isEqualTo(Map.of("1F606", 3));
+		assertThat(received.get(2).id()).endsWith(":3");
+		client.dispose();
+	}
+
+	@Test
+	public void shouldResumeFromLastEventId() throws IOException {
+		//given
+		List<ServerSentEvent<String>> received = new ArrayList<>();
+		Disposable client = aggregate.stream(null).subscribe(received::add);
+		aggregate.add(event("{\"1F606\":1}"));
+		client.dispose();
+		String lastEventId = received.get(received.size() - 1).id();
+
+		//when
+		aggregate.add(event("{\"1F60E\":2}"));
+		aggregate.add(event("{\"1F60E\":1,\"2764\":1}"));
+		ServerSentEvent<String> resumed = aggregate.stream(lastEventId).blockFirst();
+
+		//then
+		assertThat(resumed.event()).isEqualTo("delta");
+		assertThat(data(resumed)).isEqualTo(Map.of("1F60E", 3, "2764", 1));
+	}
+
+	@Test
+	public void shouldSendSnapshotForUnknownLastEventId() throws IOException {
+		//given
+		aggregate.add(event("{\"1F606\":1}"));
+
+		//when
+		ServerSentEvent<String> first = aggregate.stream("previous-boot:42").blockFirst();
+
+		//then
+		assertThat(first.event()).isEqualTo("snapshot");
+		assertThat(data(first)).isEqualTo(Map.of("1F606", 1));
+	}
+
+	/**
+	 * Bytes of SSE data for one hour of <code>emojis.txt</code>: full map on every event vs. deltas
+	 */
+	@Test
+	public void deltasShouldBeMuchSmallerThanFullSnapshots() throws IOException {
+		//given
+		List<EmojiUpdate> events = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/emojis.txt"), UTF_8))) {
+			String line;
+			while (events.size() < HOUR_OF_EVENTS && (line = reader.readLine()) != null) {
+				events.add(event(line));
+			}
+		}
+		EmojiCounts full = new EmojiCounts();
+		long[] deltaBytes = {0};
+		Disposable client = aggregate.stream(null).subscribe(sse -> deltaBytes[0] += sse.data().getBytes(UTF_8).length);
+
+		//when
+		long fullBytes = 0;
+		long start = System.nanoTime();
+		for (EmojiUpdate event : events) {
+			for (int i = 0; i < event.size(); i++) {
+				full.add(event.code(i), event.count(i));
+			}
+			fullBytes += objectMapper.writeValueAsBytes(full.snapshot()).length;
+		}
+		long fullMillis = (System.nanoTime() - start) / 1_000_000;
+		start = System.nanoTime();
+		events.forEach(aggregate::add);
+		long deltaMillis = (System.nanoTime() - start) / 1_000_000;
+		client.dispose();
+
+		//then
+		log.info("{} events: full snapshots {} bytes in {} ms, deltas {} bytes in {} ms", events.size(), fullBytes, fullMillis, deltaBytes[0], deltaMillis);
+		assertThat(deltaBytes[0] * 10).isLessThan(fullBytes);
+	}
+
+	private EmojiUpdate event(String json) {
+		return decoder.decode(new DefaultDataBufferFactory().wrap(("data:" + json + "\n").getBytes(UTF_8))).get(0);
+	}
+
+	private Map<String, Integer> data(ServerSentEvent<String> sse) throws IOException {
+		return objectMapper.readValue(sse.data(), Map.class);
+	}
+
+	/**
+	 * Events are fed with {@link EmojiAggregate#add(EmojiUpdate)} directly
+	 */
+	private static EmojiController silentTracker() {
+		EmojiController emojiController = mock(EmojiController.class);
+		given(emojiController.emojis()).willReturn(Flux.never());
+		return emojiController;
+	}
+
+}
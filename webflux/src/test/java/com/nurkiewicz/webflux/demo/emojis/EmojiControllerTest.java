@@ -1,22 +1,31 @@
 package com.nurkiewicz.webflux.demo.emojis;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 import reactor.util.Loggers;
 
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClient.RequestHeadersSpec;
 import org.springframework.web.reactive.function.client.WebClient.RequestHeadersUriSpec;
 import org.springframework.web.reactive.function.client.WebClient.ResponseSpec;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.Duration.ofMillis;
 import static java.time.Duration.ofSeconds;
-import static org.mockito.ArgumentMatchers.any;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
 
@@ -25,10 +34,15 @@ public class EmojiControllerTest {
 
 	public static final URI EMOJI_TRACKER_URL = URI.create("http://example.com");
 
+	private static final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
 	private EmojiController emojiController() {
+		return emojiController(new EmojiTrackerStubController().stubByteStream());
+	}
+
+	private EmojiController emojiController(Flux<DataBuffer> upstream) {
 		ResponseSpec rs = mock(ResponseSpec.class);
-		given(rs.bodyToFlux(ServerSentEvent.class)).willReturn(new EmojiTrackerStubController().stubSseStream());
-		given(rs.bodyToFlux(any(ParameterizedTypeReference.class))).willReturn(new EmojiTrackerStubController().stubMapStream());
+		given(rs.bodyToFlux(DataBuffer.class)).willReturn(upstream);
 		RequestHeadersSpec rhs = mock(RequestHeadersSpec.class);
 		given(rhs.retrieve()).willReturn(rs);
 		RequestHeadersUriSpec rhus = mock(RequestHeadersUriSpec.class);
@@ -144,6 +158,36 @@ public class EmojiControllerTest {
 				.verifyComplete();
 	}
 
+	/**
+	 * Bursts are collapsed into one snapshot per period, the last change is sent even if nothing follows it,
+	 * quiet periods send nothing.
+	 */
+	@Test(timeout = 5000)
+	public void shouldSampleAggregatedEmojisWithoutLosingLastChange() {
+		//given
+		Sinks.Many<String> tracker = Sinks.many().multicast().directBestEffort();
+		EmojiController controller = emojiController(tracker.asFlux().map(EmojiControllerTest::sseFrame));
+
+		//when
+		StepVerifier.withVirtualTime(() -> controller.aggregated(1000, Overflow.LATEST))
+				.expectSubscription()
+				.expectNext(Map.of())
+				.then(() -> {
+					for (int i = 0; i < 100; i++) {
+						tracker.tryEmitNext("{\"2764\":1}");
+					}
+				})
+				.expectNoEvent(ofMillis(999))
+				.thenAwait(ofMillis(1))
+				.expectNext(Map.of("2764", 100))
+				.then(() -> tracker.tryEmitNext("{\"1F606\":1}"))
+				.thenAwait(ofSeconds(1))
+				.expectNext(Map.of("2764", 100, "1F606", 1))
+				.expectNoEvent(ofSeconds(10))
+				.thenCancel()
+				.verify();
+	}
+
 	/**
 	 * TODO Top most frequent emojis (with count). Only emit when data changes (do not emit subsequent duplicates).
 	 */
@@ -188,4 +232,86 @@ public class EmojiControllerTest {
 				.verifyComplete();
 	}
 
+	/**
+	 * All endpoints and all their subscribers share one upstream connection,
+	 * which is closed when the last subscriber leaves and reopened for the next one.
+	 */
+	@Test(timeout = 5000)
+	public void shouldShareSingleUpstreamConnection() {
+		//given
+		AtomicInteger connections = new AtomicInteger();
+		Sinks.Many<String> tracker = Sinks.many().multicast().directBestEffort();
+		EmojiController controller = emojiController(tracker
+				.asFlux()
+				.map(EmojiControllerTest::sseFrame)
+				.doOnSubscribe(s -> connections.incrementAndGet()));
+		AtomicInteger received = new AtomicInteger();
+		List<Disposable> clients = new ArrayList<>();
+
+		//when
+		for (int i = 0; i < 1000; i++) {
+			Flux<?> endpoint = i % 3 == 0 ? controller.raw() : i % 3 == 1 ? controller.aggregated().skip(1) : controller.top(4).skip(1);
+			clients.add(endpoint.subscribe(x -> received.incrementAndGet()));
+		}
+		tracker.tryEmitNext("{\"1F606\":1}");
+
+		//then
+		assertThat(connections).hasValue(1);
+		assertThat(received).hasValue(1000);
+
+		//when
+		clients.forEach(Disposable::dispose);
+		controller.raw().take(1).subscribe();
+
+		//then
+		assertThat(connections).hasValue(2);
+	}
+
+	/**
+	 * Client that requested one snapshot and stopped reading gets the latest one when it asks again.
+	 * Meanwhile other clients receive every update.
+	 */
+	@Test(timeout = 5000)
+	public void shouldConflateSnapshotsForSlowClientOnly() {
+		//given
+		Sinks.Many<String> tracker = Sinks.many().multicast().directBestEffort();
+		EmojiController controller = emojiController(tracker.asFlux().map(EmojiControllerTest::sseFrame));
+		List<Map<String, Integer>> slow = new ArrayList<>();
+		BaseSubscriber<Map<String, Integer>> slowClient = new BaseSubscriber<>() {
+			@Override
+			protected void hookOnSubscribe(Subscription subscription) {
+				request(1);
+			}
+
+			@Override
+			protected void hookOnNext(Map<String, Integer> value) {
+				slow.add(value);
+			}
+		};
+		controller.aggregated().subscribe(slowClient);
+		List<Map<String, Integer>> fast = new ArrayList<>();
+		controller.aggregated().subscribe(fast::add);
+
+		//when
+		for (int i = 0; i < 1000; i++) {
+			tracker.tryEmitNext("{\"2764\":1}");
+		}
+
+		//then
+		assertThat(fast).hasSize(1001);
+		assertThat(fast.get(1000)).isEqualTo(Map.of("2764", 1000));
+		assertThat(slow).containsExactly(Map.of());
+
+		//when
+		slowClient.request(1);
+
+		//then
+		assertThat(slow).containsExactly(Map.of(), Map.of("2764", 1000));
+		slowClient.dispose();
+	}
+
+	private static DataBuffer sseFrame(String json) {
+		return bufferFactory.wrap(("data:" + json + "\n\n").getBytes(UTF_8));
+	}
+
 }
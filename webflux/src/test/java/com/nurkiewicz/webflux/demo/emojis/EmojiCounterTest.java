@@ -0,0 +1,123 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class EmojiCounterTest {
+
+	private final Sinks.Many<EmojiUpdate> tracker = Sinks.many().multicast().directBestEffort();
+	private final EmojiRepository repository = mock(EmojiRepository.class);
+	private final List<Map<String, Long>> flushed = new ArrayList<>();
+	private VirtualTimeScheduler time;
+	private EmojiCounter counter;
+
+	@Before
+	public void start() {
+		time = VirtualTimeScheduler.getOrSet();
+		EmojiController emojiController = mock(EmojiController.class);
+		given(emojiController.emojis()).willReturn(tracker.asFlux());
+		given(repository.incAll(any())).willAnswer(this::store);
+		counter = new EmojiCounter(repository, emojiController, true);
+		counter.start();
+	}
+
+	@After
+	public void stop() {
+		counter.stop();
+		VirtualTimeScheduler.reset();
+	}
+
+	@Test
+	public void shouldCoalesceIncrementsUntilFlushInterval() {
+		//given
+		tracker.tryEmitNext(event("2764", 1));
+		tracker.tryEmitNext(event("2764", 2));
+		tracker.tryEmitNext(event("1F606", 1));
+
+		//when
+		time.advanceTimeBy(Duration.ofMillis(999));
+
+		//then
+		assertThat(nonEmpty(flushed)).isEmpty();
+
+		//when
+		time.advanceTimeBy(Duration.ofMillis(1));
+
+		//then
+		assertThat(nonEmpty(flushed)).containsExactly(Map.of("2764", 3L, "1F606", 1L));
+	}
+
+	@Test
+	public void shouldFlushRightAwayWhenBatchIsFull() {
+		//given
+		String[] codes = IntStream.range(0, 499).mapToObj(i -> Integer.toHexString(0x1F000 + i)).toArray(String[]::new);
+		int[] counts = new int[codes.length];
+		Arrays.fill(counts, 1);
+		tracker.tryEmitNext(new EmojiUpdate(codes, counts));
+
+		//when
+		tracker.tryEmitNext(event(codes[0], 1));
+
+		//then
+		assertThat(nonEmpty(flushed)).isEmpty();
+
+		//when
+		tracker.tryEmitNext(event("2764", 1));
+
+		//then
+		assertThat(nonEmpty(flushed)).hasSize(1);
+		assertThat(flushed.get(0)).hasSize(500).containsEntry(codes[0], 2L).containsEntry("2764", 1L);
+	}
+
+	@Test
+	public void shouldRetryFailedBatchTogetherWithNewIncrements() {
+		//given
+		given(repository.incAll(any()))
+				.willReturn(Mono.error(new IllegalStateException("Redis is down")))
+				.willAnswer(this::store);
+		tracker.tryEmitNext(event("2764", 1));
+		time.advanceTimeBy(Duration.ofSeconds(1));
+
+		//when
+		tracker.tryEmitNext(event("2764", 2));
+		time.advanceTimeBy(Duration.ofSeconds(1));
+
+		//then
+		assertThat(nonEmpty(flushed)).containsExactly(Map.of("2764", 3L));
+	}
+
+	private Mono<Void> store(InvocationOnMock invocation) {
+		Map<String, Long> batch = invocation.getArgument(0);
+		flushed.add(new HashMap<>(batch));
+		return Mono.empty();
+	}
+
+	private static EmojiUpdate event(String code, int count) {
+		return new EmojiUpdate(new String[]{code}, new int[]{count});
+	}
+
+	private static List<Map<String, Long>> nonEmpty(List<Map<String, Long>> batches) {
+		List<Map<String, Long>> nonEmpty = new ArrayList<>(batches);
+		nonEmpty.removeIf(Map::isEmpty);
+		return nonEmpty;
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmojiCountsTest {
+
+	private final EmojiCounts counts = new EmojiCounts();
+
+	@Test
+	public void shouldAccumulateCounters() {
+		//when
+		long first = counts.add("2764", 1);
+		long second = counts.add("2764", 4);
+		counts.add("1F606", 2);
+
+		//then
+		assertThat(first).isEqualTo(1);
+		assertThat(second).isEqualTo(5);
+		assertThat(counts.get("2764")).isEqualTo(5);
+		assertThat(counts.get("1F600")).isZero();
+		assertThat(counts.size()).isEqualTo(2);
+		assertThat(counts.snapshot()).isEqualTo(Map.of("2764", 5, "1F606", 2));
+	}
+
+	@Test
+	public void shouldKeepSnapshotUnchangedByLaterUpdates() {
+		//given
+		counts.add("2764", 1);
+		Map<String, Integer> snapshot = counts.snapshot();
+
+		//when
+		counts.add("2764", 1);
+		counts.add("1F606", 1);
+
+		//then
+		assertThat(snapshot).isEqualTo(Map.of("2764", 1));
+	}
+
+	@Test
+	public void shouldMatchHashMapWhenGrowingBeyondInitialCapacity() {
+		//given
+		Map<String, Integer> expected = new HashMap<>();
+
+		//when
+		for (int i = 0; i < 10_000; i++) {
+			String emoji = Integer.toHexString(0x1F000 + i % 3000);
+			counts.add(emoji, 1);
+			expected.merge(emoji, 1, Integer::sum);
+		}
+
+		//then
+		assertThat(counts.size()).isEqualTo(3000);
+		assertThat(counts.snapshot()).isEqualTo(expected);
+	}
+
+	@Test
+	public void shouldReturnOnlyCountersChangedSinceVersion() {
+		//given
+		counts.add("2764", 1, 1);
+		counts.add("1F606", 1, 2);
+		counts.add("2764", 1, 3);
+
+		//when
+		Map<String, Integer> changed = counts.changedSince(2);
+
+		//then
+		assertThat(changed).isEqualTo(Map.of("2764", 2));
+		assertThat(counts.changedSince(0)).isEqualTo(Map.of("2764", 2, "1F606", 1));
+	}
+
+	@Test
+	public void shouldDrainNonZeroCountersAndStartOver() {
+		//given
+		counts.add("2764", 3);
+		counts.add("1F606", 0);
+
+		//when
+		Map<String, Long> drained = counts.drain();
+
+		//then
+		assertThat(drained).isEqualTo(Map.of("2764", 3L));
+		assertThat(counts.size()).isZero();
+		assertThat(counts.get("2764")).isZero();
+
+		//when
+		counts.add("2764", 1);
+
+		//then
+		assertThat(counts.drain()).isEqualTo(Map.of("2764", 1L));
+	}
+
+}
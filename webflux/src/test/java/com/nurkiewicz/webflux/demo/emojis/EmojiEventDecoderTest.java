@@ -0,0 +1,74 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmojiEventDecoderTest {
+
+	private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+	private final EmojiEventDecoder decoder = new EmojiEventDecoder();
+
+	@Test
+	public void shouldDecodeEventsSplitAcrossBuffers() {
+		//given
+		String stream = ":comment\n" +
+				"data:{\"1F606\":1,\"1F60E\":1}\n\n" +
+				"event:update\n" +
+				"data:{\"1F60E\":2, \"1F60A\":4}\r\n\r\n" +
+				"data:{}\n\n" +
+				"data:{\"0023-20E3\":12}\n\n";
+
+		//when
+		List<Map<String, Integer>> events = decodeInChunksOf(stream, 7);
+
+		//then
+		assertThat(events).containsExactly(
+				Map.of("1F606", 1, "1F60E", 1),
+				Map.of("1F60E", 2, "1F60A", 4),
+				Map.of(),
+				Map.of("0023-20E3", 12));
+	}
+
+	@Test
+	public void shouldSkipMalformedEvent() {
+		//given
+		String stream = "data:{\"1F606\":x}\n\ndata:{\"1F606\"\n\ndata:{\"2764\":3}\n\n";
+
+		//when
+		List<Map<String, Integer>> events = decodeInChunksOf(stream, 1);
+
+		//then
+		assertThat(events).containsExactly(Map.of("2764", 3));
+	}
+
+	@Test
+	public void shouldReuseCodeInstances() {
+		//when
+		List<EmojiUpdate> first = decoder.decode(bufferFactory.wrap("data:{\"2764\":1}\n".getBytes(UTF_8)));
+		List<EmojiUpdate> second = decoder.decode(bufferFactory.wrap("data:{\"2764\":2}\n".getBytes(UTF_8)));
+
+		//then
+		assertThat(second.get(0).code(0)).isSameAs(first.get(0).code(0));
+	}
+
+	private List<Map<String, Integer>> decodeInChunksOf(String stream, int chunkSize) {
+		byte[] bytes = stream.getBytes(UTF_8);
+		return IntStream
+				.iterate(0, from -> from < bytes.length, from -> from + chunkSize)
+				.mapToObj(from -> bufferFactory.wrap(Arrays.copyOfRange(bytes, from, Math.min(from + chunkSize, bytes.length))))
+				.flatMap(buffer -> decoder.decode(buffer).stream())
+				.map(EmojiUpdate::toMap)
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmojiGlyphsTest {
+
+	@Test
+	public void shouldRenderSameBytesAsPreviousImplementation() throws IOException {
+		for (String code : allCodes()) {
+			//when
+			String glyph = EmojiGlyphs.of(code);
+
+			//then
+			assertThat(glyph.getBytes(UTF_8))
+					.as(code)
+					.isEqualTo(previousCodeToEmoji(code).getBytes(UTF_8));
+		}
+	}
+
+	@Test
+	public void shouldReturnCachedInstance() {
+		assertThat(EmojiGlyphs.of("1F606")).isSameAs(EmojiGlyphs.of("1F606"));
+	}
+
+	@Test
+	public void shouldRenderSequencesOfAnyLength() {
+		assertThat(EmojiGlyphs.of("1F468-200D-1F469-200D-1F467")).isEqualTo("👨‍👩‍👧");
+		assertThat(EmojiGlyphs.of("")).isEmpty();
+		assertThat(EmojiGlyphs.of(null)).isEmpty();
+	}
+
+	private static Set<String> allCodes() throws IOException {
+		try (InputStream inputStream = EmojiGlyphsTest.class.getResourceAsStream("/emojis.txt")) {
+			Matcher matcher = Pattern.compile("\"([0-9A-F-]+)\"").matcher(new String(inputStream.readAllBytes(), UTF_8));
+			Set<String> codes = new TreeSet<>();
+			while (matcher.find()) {
+				codes.add(matcher.group(1));
+			}
+			return codes;
+		}
+	}
+
+	/**
+	 * Former <code>EmojiController.codeToEmoji()</code>
+	 */
+	private static String previousCodeToEmoji(String hex) {
+		if (hex == null || hex.isBlank()) {
+			return "";
+		}
+		final String[] codes = hex.split("-");
+		if (codes.length == 2) {
+			return hexToEmoji(codes[0]) + hexToEmoji(codes[1]);
+		} else {
+			return hexToEmoji(hex);
+		}
+	}
+
+	private static String hexToEmoji(String hex) {
+		if (hex == null || hex.isBlank()) {
+			return "";
+		}
+		return new String(Character.toChars(Integer.parseInt(hex, 16)));
+	}
+
+}
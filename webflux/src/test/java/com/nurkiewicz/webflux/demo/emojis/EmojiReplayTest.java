@@ -0,0 +1,53 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmojiReplayTest {
+
+	private final EmojiReplay replay = EmojiReplay.load("/emojis.txt");
+
+	@Test(timeout = 10_000)
+	public void shouldReplayAsFastAsPossibleWrappingAround() {
+		//given
+		EmojiEventDecoder decoder = new EmojiEventDecoder();
+		int events = replay.size() + 3;
+
+		//when
+		List<EmojiUpdate> replayed = replay
+				.replay(0, 1000)
+				.concatMapIterable(decoder::decode)
+				.take(events)
+				.collectList()
+				.block();
+
+		//then
+		assertThat(replayed).hasSize(events);
+		assertThat(replayed.get(0).toMap()).isEqualTo(Map.of("1F606", 1, "1F60E", 1));
+		assertThat(replayed.get(replay.size()).toMap()).isEqualTo(replayed.get(0).toMap());
+		assertThat(replayed.get(replay.size() + 2).toMap()).isEqualTo(Map.of("1F60A", 4, "1F60E", 2));
+	}
+
+	@Test
+	public void shouldEmitBurstsAtGivenRate() {
+		EmojiEventDecoder decoder = new EmojiEventDecoder();
+		StepVerifier.withVirtualTime(() -> replay
+						.replay(100, 10)
+						.concatMapIterable(decoder::decode)
+						.take(30))
+				.expectSubscription()
+				.thenAwait(Duration.ofMillis(49))
+				.thenAwait(Duration.ofMillis(1))
+				.expectNextCount(10)
+				.thenAwait(Duration.ofMillis(200))
+				.expectNextCount(20)
+				.verifyComplete();
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.nurkiewicz.webflux.demo.IntegrationTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares per-event <code>HINCRBY</code> with coalesced batches applied by one script against Redis from testcontainers
+ */
+public class EmojiRepositoryTest extends IntegrationTest {
+
+	private static final Logger log = LoggerFactory.getLogger(EmojiRepositoryTest.class);
+
+	private static final int EVENTS = 20_000;
+	private static final int BATCH = 500;
+
+	@Autowired
+	private EmojiRepository repository;
+
+	@Autowired
+	private ReactiveStringRedisTemplate redis;
+
+	private List<String> events;
+
+	@Before
+	public void setup() {
+		Random random = new Random(42);
+		events = IntStream
+				.range(0, EVENTS)
+				.mapToObj(i -> Integer.toHexString(0x1F600 + (int) (200 * Math.pow(random.nextDouble(), 3))).toUpperCase())
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void batchedFlushShouldStoreSameCountsAsPerEventIncrements() {
+		//given
+		redis.delete(EmojiRepository.KEY).block();
+		long start = System.nanoTime();
+		Flux.fromIterable(events)
+				.concatMap(emoji -> repository.inc(emoji, 1))
+				.blockLast();
+		long perEventMillis = (System.nanoTime() - start) / 1_000_000;
+		Map<Object, Object> perEvent = redis.opsForHash().entries(EmojiRepository.KEY).collectMap(Map.Entry::getKey, Map.Entry::getValue).block();
+
+		//when
+		redis.delete(EmojiRepository.KEY).block();
+		start = System.nanoTime();
+		Flux.fromIterable(events)
+				.buffer(BATCH)
+				.map(batch -> batch.stream().collect(Collectors.groupingBy(emoji -> emoji, HashMap::new, Collectors.counting())))
+				.concatMap(repository::incAll)
+				.blockLast();
+		long batchedMillis = (System.nanoTime() - start) / 1_000_000;
+		Map<Object, Object> batched = redis.opsForHash().entries(EmojiRepository.KEY).collectMap(Map.Entry::getKey, Map.Entry::getValue).block();
+
+		//then
+		log.info("{} events: per-event INCRBY {} ms, coalesced batches of {} in {} ms", EVENTS, perEventMillis, BATCH, batchedMillis);
+		assertThat(batched).isEqualTo(perEvent);
+		String expected = String.valueOf(events.stream().filter("1F600"::equals).count());
+		assertThat(perEvent).containsEntry("1F600", expected);
+		assertThat(repository.get("1F600").block()).isNotNull().isEqualTo(expected);
+	}
+
+}
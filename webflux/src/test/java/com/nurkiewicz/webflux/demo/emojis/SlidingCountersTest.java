@@ -0,0 +1,74 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlidingCountersTest {
+
+	private static final long T0 = 1_000_000;
+
+	@Test
+	public void shouldOnlyCountCompleteSeconds() {
+		//given
+		SlidingCounters counters = new SlidingCounters(T0);
+
+		//when
+		counters.add("2764", 5, T0);
+
+		//then
+		assertThat(counters.rates(1, T0)).containsEntry("2764", 0.0);
+		assertThat(counters.rates(1, T0 + 1)).containsEntry("2764", 5.0);
+		assertThat(counters.rates(10, T0 + 1)).containsEntry("2764", 0.5);
+		assertThat(counters.rates(1, T0 + 2)).containsEntry("2764", 0.0);
+	}
+
+	@Test
+	public void shouldSlideWindows() {
+		//given
+		SlidingCounters counters = new SlidingCounters(T0);
+
+		//when
+		for (int second = 0; second < 120; second++) {
+			counters.add("1F602", 1, T0 + second);
+			counters.add("2764", second, T0 + second);
+		}
+
+		//then
+		assertThat(counters.rates(1, T0 + 120)).containsEntry("1F602", 1.0).containsEntry("2764", 119.0);
+		assertThat(counters.rates(10, T0 + 120)).containsEntry("1F602", 1.0).containsEntry("2764", 114.5);
+		assertThat(counters.rates(60, T0 + 120)).containsEntry("1F602", 1.0).containsEntry("2764", 89.5);
+	}
+
+	@Test
+	public void shouldForgetEverythingAfterLongIdlePeriod() {
+		//given
+		SlidingCounters counters = new SlidingCounters(T0);
+		counters.add("1F602", 7, T0);
+
+		//when
+		counters.add("2764", 1, T0 + 3600);
+
+		//then
+		assertThat(counters.rates(60, T0 + 3601))
+				.containsEntry("1F602", 0.0)
+				.containsEntry("2764", 1.0 / 60);
+	}
+
+	@Test
+	public void shouldGrowBeyondInitialCapacity() {
+		//given
+		SlidingCounters counters = new SlidingCounters(T0);
+
+		//when
+		for (int i = 0; i < 1000; i++) {
+			counters.add("E" + i, i, T0);
+		}
+
+		//then
+		assertThat(counters.rates(1, T0 + 1))
+				.hasSize(1000)
+				.containsEntry("E999", 999.0);
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.nurkiewicz.webflux.demo.emojis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static java.util.Comparator.reverseOrder;
+import static java.util.stream.Collectors.toMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TopKTest {
+
+	@Test
+	public void shouldEmitOnlyWhenTopChanges() {
+		//given
+		TopK top = new TopK(2);
+
+		//when
+		boolean first = top.update("A", 1);
+		boolean second = top.update("B", 2);
+		boolean tooSmall = top.update("C", 1);
+		boolean sameCount = top.update("B", 2);
+		boolean evicting = top.update("C", 3);
+
+		//then
+		assertThat(first).isTrue();
+		assertThat(second).isTrue();
+		assertThat(tooSmall).isFalse();
+		assertThat(sameCount).isFalse();
+		assertThat(evicting).isTrue();
+		assertThat(top.snapshot()).isEqualTo(Map.of("B", 2, "C", 3));
+	}
+
+	@Test
+	public void shouldMatchFullSortOfAllCounters() {
+		//given
+		Random random = new Random(42);
+		Map<String, Integer> counts = new HashMap<>();
+		TopK top = new TopK(10);
+
+		for (int i = 0; i < 10_000; i++) {
+			//when
+			String key = "K" + (int) Math.abs(random.nextGaussian() * 300);
+			int count = counts.merge(key, 1 + random.nextInt(3), Integer::sum);
+			top.update(key, count);
+
+			//then
+			assertThat(top.snapshot().values())
+					.containsExactlyInAnyOrderElementsOf(topValues(counts, 10).values());
+		}
+	}
+
+	private static Map<String, Integer> topValues(Map<String, Integer> agg, int n) {
+		return agg
+				.entrySet()
+				.stream()
+				.sorted(Map.Entry.comparingByValue(reverseOrder()))
+				.limit(n)
+				.collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.testcontainers.containers.GenericContainer;
+import reactor.core.Disposable;
+
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Change streams need a replica set, so unlike {@link com.nurkiewicz.webflux.demo.IntegrationTest}
+ * this test starts its own single-node one.
+ */
+public class ArticleChangeStreamTest {
+
+	private static GenericContainer<?> mongo;
+	private static MongoClient client;
+	private static ReactiveMongoTemplate mongoTemplate;
+
+	@BeforeClass
+	public static void startReplicaSet() throws Exception {
+		mongo = new GenericContainer<>("mongo:4.0.5")
+				.withCommand("--replSet", "rs0")
+				.withExposedPorts(27017);
+		mongo.start();
+		mongo.execInContainer("mongo", "--quiet", "--eval", "rs.initiate()");
+		long deadline = System.currentTimeMillis() + 30_000;
+		while (!mongo.execInContainer("mongo", "--quiet", "--eval", "rs.isMaster().ismaster").getStdout().trim().equals("true")) {
+			assertThat(System.currentTimeMillis()).isLessThan(deadline);
+			TimeUnit.MILLISECONDS.sleep(200);
+		}
+		client = MongoClients.create("mongodb://" + mongo.getHost() + ":" + mongo.getMappedPort(27017) + "/?directConnection=true");
+		mongoTemplate = new ReactiveMongoTemplate(client, "test");
+	}
+
+	@AfterClass
+	public static void stopReplicaSet() {
+		client.close();
+		mongo.stop();
+	}
+
+	/**
+	 * Position is persisted periodically after delivery, so articles delivered since the last checkpoint may be delivered again
+	 */
+	@Test
+	public void restartedNodeShouldResumeWithoutMissingArticles() throws InterruptedException {
+		//given
+		ArticleWriter articleWriter = new ArticleWriter(mongoTemplate);
+		BlockingQueue<Article> received = new LinkedBlockingQueue<>();
+		Disposable node = new ArticleChangeStream(mongoTemplate, "node-1").newArticles().subscribe(received::add);
+		awaitCursorOpen(articleWriter, received);
+		articleWriter.upsert(List.of(article("before-restart"))).blockLast();
+		assertThat(nextAfterWarmUp(received).getTitle()).isEqualTo("before-restart");
+		TimeUnit.MILLISECONDS.sleep(ArticleChangeStream.CHECKPOINT_INTERVAL.multipliedBy(2).toMillis());
+		node.dispose();
+		articleWriter.upsert(List.of(article("while-down-1"), article("while-down-2"))).blockLast();
+
+		//when
+		List<Article> afterRestart = new ArticleChangeStream(mongoTemplate, "node-1")
+				.newArticles()
+				.takeUntil(article -> article.getTitle().equals("while-down-2"))
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+		//then
+		assertThat(afterRestart)
+				.extracting(Article::getTitle)
+				.endsWith("while-down-1", "while-down-2")
+				.hasSizeLessThanOrEqualTo(3);
+	}
+
+	/**
+	 * Without stored position, change stream starts from the moment cursor is open, which happens asynchronously
+	 */
+	private static void awaitCursorOpen(ArticleWriter articleWriter, BlockingQueue<Article> received) throws InterruptedException {
+		for (int i = 0; received.isEmpty(); i++) {
+			assertThat(i).isLessThan(50);
+			articleWriter.upsert(List.of(article("warm-up-" + i))).blockLast();
+			TimeUnit.MILLISECONDS.sleep(200);
+		}
+	}
+
+	private static Article nextAfterWarmUp(BlockingQueue<Article> received) throws InterruptedException {
+		Article next;
+		do {
+			next = received.poll(10, TimeUnit.SECONDS);
+			assertThat(next).isNotNull();
+		} while (next.getTitle().startsWith("warm-up-"));
+		return next;
+	}
+
+	private static Article article(String title) {
+		return new Article(URI.create("http://example.com/" + title), Instant.now(), title);
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.nurkiewicz.webflux.demo.IntegrationTest;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Compares one-by-one <code>insert()</code> with batched bulk upserts against Mongo from testcontainers.
+ * Every test writes under its own link prefix and removes these articles afterwards.
+ */
+public class ArticleWriterTest extends IntegrationTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ArticleWriterTest.class);
+
+	private static final int ARTICLES = 100_000;
+	private static final int BATCH = 1000;
+
+	@Autowired
+	private ArticleWriter articleWriter;
+
+	@Autowired
+	private ArticleRepository articleRepository;
+
+	@Autowired
+	private ReactiveMongoTemplate mongoTemplate;
+
+	private final String prefix = "http://example.com/writer/" + UUID.randomUUID() + "/";
+
+	@After
+	public void cleanup() {
+		mongoTemplate.remove(written(), Article.class).block();
+	}
+
+	@Test
+	public void batchedUpsertsShouldStoreSameArticlesAsOneByOneInserts() {
+		Assume.assumeTrue("Enable with -Pmongo.benchmarks", Boolean.getBoolean("mongo.benchmarks"));
+		//given
+		List<Article> articles = articles(ARTICLES);
+		long start = System.nanoTime();
+		Flux.fromIterable(articles)
+				.concatMap(article -> articleRepository.insert(article))
+				.blockLast();
+		long oneByOneMillis = (System.nanoTime() - start) / 1_000_000;
+
+		//when
+		mongoTemplate.remove(written(), Article.class).block();
+		start = System.nanoTime();
+		Long inserted = Flux.fromIterable(articles)
+				.buffer(BATCH)
+				.concatMap(articleWriter::upsert)
+				.count()
+				.block();
+		long batchedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		//then
+		log.info("{} articles: one-by-one insert {} ms, bulk upserts of {} in {} ms", ARTICLES, oneByOneMillis, BATCH, batchedMillis);
+		assertThat(inserted).isEqualTo(ARTICLES);
+		assertThat(mongoTemplate.count(written(), Article.class).block()).isEqualTo(ARTICLES);
+		assertThat(articleRepository.findById(URI.create(prefix + 42)).block().getTitle()).isEqualTo("Article 42");
+	}
+
+	@Test
+	public void shouldReportOnlyNewArticles() {
+		//given
+		List<Article> articles = articles(30);
+		articleWriter.upsert(articles.subList(0, 10)).blockLast();
+
+		//when
+		List<Article> stored = articleWriter.upsert(articles.subList(5, 15)).collectList().block();
+
+		//then
+		assertThat(stored).extracting(Article::getTitle).containsExactlyInAnyOrder(
+				"Article 10", "Article 11", "Article 12", "Article 13", "Article 14");
+		assertThat(mongoTemplate.count(written(), Article.class).block()).isEqualTo(15);
+	}
+
+	private List<Article> articles(int count) {
+		Instant now = Instant.now();
+		return IntStream
+				.range(0, count)
+				.mapToObj(i -> new Article(URI.create(prefix + i), now.minusSeconds(i), "Article " + i))
+				.collect(Collectors.toList());
+	}
+
+	private Query written() {
+		return query(where("_id").regex("^" + Pattern.quote(prefix)));
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Sinks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class ArticlesStreamTest {
+
+	private static final int SUBSCRIBERS = 5000;
+
+	private final Sinks.Many<Article> stored = Sinks.many().replay().limit(10);
+	private final ArticlesStream articlesStream = articlesStream();
+
+	@Test
+	public void shouldPushEveryArticleToThousandsOfSubscribers() {
+		//given
+		List<List<Article>> received = IntStream
+				.range(0, SUBSCRIBERS)
+				.mapToObj(i -> new CopyOnWriteArrayList<Article>())
+				.collect(Collectors.toList());
+		List<Disposable> subscriptions = received
+				.stream()
+				.map(list -> articlesStream.newArticles().subscribe(list::add))
+				.collect(Collectors.toList());
+
+		//when
+		stored.tryEmitNext(article(1));
+		stored.tryEmitNext(article(2));
+
+		//then
+		assertThat(articlesStream.subscribers()).isEqualTo(SUBSCRIBERS);
+		assertThat(received).allSatisfy(list -> assertThat(list).extracting(Article::getTitle).containsExactly("1", "2"));
+		assertThat(articlesStream.dropped()).isZero();
+		subscriptions.forEach(Disposable::dispose);
+		assertThat(articlesStream.subscribers()).isZero();
+	}
+
+	@Test
+	public void shouldDropOldestArticlesForSlowSubscriberOnly() {
+		//given
+		List<Article> slow = new CopyOnWriteArrayList<>();
+		List<Article> fast = new CopyOnWriteArrayList<>();
+		articlesStream.newArticles().subscribe(new BaseSubscriber<>() {
+			@Override
+			protected void hookOnSubscribe(Subscription subscription) {
+				request(1);
+			}
+
+			@Override
+			protected void hookOnNext(Article value) {
+				slow.add(value);
+			}
+		});
+		articlesStream.newArticles().subscribe(fast::add);
+		int total = ArticlesStream.SUBSCRIBER_BUFFER_SIZE + 100;
+
+		//when
+		IntStream.range(0, total).forEach(i -> stored.tryEmitNext(article(i)));
+
+		//then
+		assertThat(fast).hasSize(total);
+		assertThat(slow).hasSize(1);
+		assertThat(articlesStream.dropped()).isEqualTo(total - 1 - ArticlesStream.SUBSCRIBER_BUFFER_SIZE);
+		assertThat(articlesStream.maxLag()).isEqualTo(ArticlesStream.SUBSCRIBER_BUFFER_SIZE + 1);
+	}
+
+	private ArticlesStream articlesStream() {
+		FeedAggregator feedAggregator = mock(FeedAggregator.class);
+		given(feedAggregator.newArticles()).willReturn(stored.asFlux());
+		return new ArticlesStream(mock(ArticleRepository.class), feedAggregator, mock(ArticleChangeStream.class), false);
+	}
+
+	private static Article article(int i) {
+		return new Article(URI.create("http://example.com/" + i), Instant.EPOCH.plusSeconds(i), String.valueOf(i));
+	}
+
+}
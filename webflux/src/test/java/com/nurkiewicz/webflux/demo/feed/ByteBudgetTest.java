@@ -0,0 +1,122 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import reactor.core.Disposable;
+
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ByteBudgetTest {
+
+	private final ByteBudget budget = new ByteBudget(DataSize.ofBytes(100));
+
+	@Test
+	public void shouldWaitUntilEnoughBytesAreReleased() {
+		//given
+		ByteBudget.Reservation first = budget.reservation();
+		first.acquire(80).block();
+		AtomicBoolean admitted = new AtomicBoolean();
+
+		//when
+		ByteBudget.Reservation second = budget.reservation();
+		second.acquire(30).subscribe(x -> {}, e -> {}, () -> admitted.set(true));
+
+		//then
+		assertThat(admitted).isFalse();
+		assertThat(budget.waiting()).isEqualTo(1);
+
+		//when
+		first.release();
+
+		//then
+		assertThat(admitted).isTrue();
+		assertThat(budget.used()).isEqualTo(30);
+	}
+
+	@Test
+	public void shouldLetOldestReservationGrowBeyondBudgetWithoutWaiting() {
+		//given
+		ByteBudget.Reservation oldest = budget.reservation();
+		oldest.acquire(10).block();
+		budget.reservation().acquire(50).block();
+
+		//when
+		oldest.received(60).block();
+		oldest.received(90).block();
+
+		//then
+		assertThat(budget.used()).isEqualTo(200);
+		assertThat(budget.peak()).isEqualTo(200);
+
+		//when
+		oldest.release();
+		oldest.release();
+
+		//then
+		assertThat(budget.used()).isEqualTo(50);
+	}
+
+	@Test
+	public void shouldStopReadingBodyLargerThanAcquiredUntilBudgetIsReleased() {
+		//given
+		ByteBudget.Reservation oldest = budget.reservation();
+		oldest.acquire(50).block();
+		ByteBudget.Reservation growing = budget.reservation();
+		growing.acquire(40).block();
+		AtomicBoolean grown = new AtomicBoolean();
+
+		//when
+		growing.received(40).block();
+		growing.received(30).subscribe(x -> {}, e -> {}, () -> grown.set(true));
+		AtomicBoolean admitted = new AtomicBoolean();
+		budget.reservation().acquire(5).subscribe(x -> {}, e -> {}, () -> admitted.set(true));
+
+		//then
+		assertThat(grown).isFalse();
+		assertThat(admitted).as("growing reservations go first").isFalse();
+		assertThat(budget.waiting()).isEqualTo(2);
+
+		//when
+		oldest.release();
+
+		//then
+		assertThat(grown).isTrue();
+		assertThat(admitted).isTrue();
+		assertThat(budget.used()).isEqualTo(75);
+	}
+
+	@Test
+	public void shouldAdmitBodyLargerThanBudgetWhenNothingElseIsHeld() {
+		//given
+		ByteBudget.Reservation reservation = budget.reservation();
+
+		//when
+		reservation.acquire(1_000).block();
+
+		//then
+		assertThat(budget.used()).isEqualTo(1_000);
+	}
+
+	@Test
+	public void shouldForgetCancelledWaiter() {
+		//given
+		ByteBudget.Reservation first = budget.reservation();
+		first.acquire(100).block();
+		Disposable cancelled = budget.reservation().acquire(50).subscribe();
+		AtomicBoolean admitted = new AtomicBoolean();
+		budget.reservation().acquire(100).subscribe(x -> {}, e -> {}, () -> admitted.set(true));
+
+		//when
+		cancelled.dispose();
+		first.release();
+
+		//then
+		assertThat(admitted).isTrue();
+		assertThat(budget.used()).isEqualTo(100);
+		assertThat(budget.waiting()).isZero();
+	}
+
+}
@@ -0,0 +1,232 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.rometools.opml.feed.opml.Outline;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Fetch cycle over 1000 feeds served by a local stub server
+ */
+public class FeedAggregatorTest {
+
+	private static final Logger log = LoggerFactory.getLogger(FeedAggregatorTest.class);
+
+	static final String RSS = "<?xml version=\"1.0\"?>" +
+			"<rss version=\"2.0\"><channel><title>Blog</title><link>http://example.com</link><description>Blog</description>" +
+			"<item><title>Article</title><link>http://example.com/article</link><pubDate>Mon, 01 Jan 2024 00:00:00 GMT</pubDate></item>" +
+			"</channel></rss>";
+
+	private static final int FEEDS = 1000;
+	private static final int CONCURRENCY = 32;
+
+	private final WireMockServer server = new WireMockServer(options().dynamicPort());
+
+	@Before
+	public void startServer() {
+		server.start();
+		server.stubFor(get(urlPathMatching("/feed/.*")).willReturn(aResponse()
+				.withFixedDelay(20)
+				.withHeader("Content-Type", "application/rss+xml")
+				.withBody(RSS)));
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+	}
+
+	@Test(timeout = 60_000)
+	public void shouldFetchAllFeedsWithBoundedConcurrency() {
+		//given
+		OpmlReader opmlReader = mock(OpmlReader.class);
+		given(opmlReader.feedList()).willReturn(Mono.just(OpmlReader.FeedList.initial(outlines())));
+		ArticleWriter articleWriter = mock(ArticleWriter.class);
+		given(articleWriter.upsert(anyCollection())).willReturn(Flux.empty());
+		FeedAggregator aggregator = new FeedAggregator(opmlReader, new FeedReader(WebClient.create(), new HostLimiter(CONCURRENCY, Duration.ZERO), new ByteBudget(DataSize.ofMegabytes(64))), articleWriter, watermarkRepository(), mock(NewestArticles.class), redisRepository(), CONCURRENCY, true);
+
+		//when
+		long start = System.nanoTime();
+		aggregator.cycle().block();
+		long millis = (System.nanoTime() - start) / 1_000_000;
+
+		//then
+		log.info("{} feeds fetched in {} ms, peak {} in flight", FEEDS, millis, aggregator.peakInFlight());
+		server.verify(FEEDS, getRequestedFor(urlPathMatching("/feed/.*")));
+		assertThat(aggregator.peakInFlight()).isBetween(2, CONCURRENCY);
+	}
+
+	@Test(timeout = 60_000)
+	public void shouldNotQueryMongoForUnchangedFeeds() {
+		//given
+		OpmlReader opmlReader = mock(OpmlReader.class);
+		given(opmlReader.feedList()).willReturn(Mono.just(OpmlReader.FeedList.initial(outlines())));
+		ArticleWriter articleWriter = mock(ArticleWriter.class);
+		AtomicInteger upserts = new AtomicInteger();
+		given(articleWriter.upsert(anyCollection())).willAnswer(inv -> Flux
+				.fromIterable(inv.<Collection<Article>>getArgument(0))
+				.doOnSubscribe(s -> upserts.incrementAndGet()));
+		FeedWatermarkRepository watermarkRepository = watermarkRepository();
+		FeedAggregator aggregator = new FeedAggregator(opmlReader, new FeedReader(WebClient.create(), new HostLimiter(CONCURRENCY, Duration.ZERO), new ByteBudget(DataSize.ofMegabytes(64))), articleWriter, watermarkRepository, mock(NewestArticles.class), redisRepository(), CONCURRENCY, true);
+		aggregator.cycle().block();
+		long firstCycle = aggregator.mongoQueries();
+
+		//when
+		aggregator.cycle(Instant.now().plus(PollSchedule.MAX_INTERVAL.multipliedBy(2))).block();
+
+		//then
+		server.verify(2 * FEEDS, getRequestedFor(urlPathMatching("/feed/.*")));
+		log.info("Mongo queries: {} in first cycle, {} in second", firstCycle, aggregator.mongoQueries());
+		// watermark lookup and save per feed, one upsert per batch of changed feeds
+		assertThat(firstCycle).isEqualTo(FEEDS + upserts.get() + FEEDS);
+		assertThat(upserts.get()).as("at most 100 feeds per batch").isBetween(FEEDS / 100, FEEDS);
+		assertThat(aggregator.mongoQueries()).isZero();
+		verify(articleWriter, times(upserts.get())).upsert(anyCollection());
+		verify(watermarkRepository, times(FEEDS)).findById(any(String.class));
+		verify(watermarkRepository, times(FEEDS)).save(any(FeedWatermark.class));
+	}
+
+	@Test(timeout = 60_000)
+	public void shouldKeepStoringArticlesWhenRedisIsDown() {
+		//given
+		OpmlReader opmlReader = mock(OpmlReader.class);
+		given(opmlReader.feedList()).willReturn(Mono.just(OpmlReader.FeedList.initial(outlines())));
+		ArticleWriter articleWriter = mock(ArticleWriter.class);
+		AtomicInteger upserted = new AtomicInteger();
+		given(articleWriter.upsert(anyCollection())).willAnswer(inv -> Flux
+				.fromIterable(inv.<Collection<Article>>getArgument(0))
+				.doOnNext(article -> upserted.incrementAndGet()));
+		FeedWatermarkRepository watermarkRepository = watermarkRepository();
+		FeedAggregator aggregator = new FeedAggregator(opmlReader, new FeedReader(WebClient.create(), new HostLimiter(CONCURRENCY, Duration.ZERO), new ByteBudget(DataSize.ofMegabytes(64))), articleWriter, watermarkRepository, mock(NewestArticles.class), unavailableRedisRepository(), CONCURRENCY, true);
+
+		//when
+		aggregator.cycle().block();
+
+		//then
+		server.verify(FEEDS, getRequestedFor(urlPathMatching("/feed/.*")));
+		assertThat(upserted).hasValue(FEEDS);
+		verify(watermarkRepository, times(FEEDS)).save(any(FeedWatermark.class));
+	}
+
+	@Test(timeout = 60_000)
+	public void shouldNotFetchFeedsAnotherInstanceScheduledForLater() {
+		//given
+		OpmlReader opmlReader = mock(OpmlReader.class);
+		given(opmlReader.feedList()).willReturn(Mono.just(OpmlReader.FeedList.initial(outlines())));
+		ArticleWriter articleWriter = mock(ArticleWriter.class);
+		RedisRepository redisRepository = redisRepository();
+		Instant nextPoll = Instant.now().plus(Duration.ofHours(1));
+		given(redisRepository.metadata(anyString())).willReturn(Mono.just(new FeedMetadata(null, null, "hash", nextPoll)));
+		FeedAggregator aggregator = new FeedAggregator(opmlReader, new FeedReader(WebClient.create(), new HostLimiter(CONCURRENCY, Duration.ZERO), new ByteBudget(DataSize.ofMegabytes(64))), articleWriter, watermarkRepository(), mock(NewestArticles.class), redisRepository, CONCURRENCY, true);
+
+		//when
+		aggregator.cycle().block();
+		aggregator.cycle(nextPoll.minusSeconds(1)).block();
+
+		//then
+		server.verify(0, getRequestedFor(urlPathMatching("/feed/.*")));
+		verify(redisRepository, times(FEEDS)).metadata(anyString());
+	}
+
+	@Test(timeout = 60_000)
+	public void shouldBackOffFeedsWithoutNewArticlesEvenWithoutSharedMetadata() {
+		//given
+		OpmlReader opmlReader = mock(OpmlReader.class);
+		given(opmlReader.feedList()).willReturn(Mono.just(OpmlReader.FeedList.initial(outlines())));
+		ArticleWriter articleWriter = mock(ArticleWriter.class);
+		given(articleWriter.upsert(anyCollection())).willAnswer(inv -> Flux.fromIterable(inv.<Collection<Article>>getArgument(0)));
+		RedisRepository redisRepository = redisRepository();
+		List<FeedMetadata> saved = new CopyOnWriteArrayList<>();
+		given(redisRepository.saveMetadata(anyString(), any(FeedMetadata.class))).willAnswer(inv -> {
+			saved.add(inv.getArgument(1));
+			return Mono.just(true);
+		});
+		FeedAggregator aggregator = new FeedAggregator(opmlReader, new FeedReader(WebClient.create(), new HostLimiter(CONCURRENCY, Duration.ZERO), new ByteBudget(DataSize.ofMegabytes(64))), articleWriter, watermarkRepository(), mock(NewestArticles.class), redisRepository, CONCURRENCY, true);
+		aggregator.cycle().block();
+		saved.clear();
+
+		//when
+		Instant secondCycle = Instant.now();
+		aggregator.cycle(secondCycle.plus(PollSchedule.MAX_INTERVAL.multipliedBy(2))).block();
+
+		//then
+		assertThat(saved).hasSize(FEEDS);
+		assertThat(saved).allSatisfy(metadata -> assertThat(metadata.getNextPoll())
+				.as("minimum interval stretched by backoff, minus jitter")
+				.isAfter(secondCycle.plus(Duration.ofSeconds(40))));
+	}
+
+	/**
+	 * Every lease granted, nothing shared
+	 */
+	private RedisRepository redisRepository() {
+		RedisRepository redisRepository = mock(RedisRepository.class);
+		given(redisRepository.tryLease(anyString(), anyString(), any(Duration.class))).willReturn(Mono.just(true));
+		given(redisRepository.metadata(anyString())).willReturn(Mono.empty());
+		given(redisRepository.saveMetadata(anyString(), any(FeedMetadata.class))).willReturn(Mono.just(true));
+		given(redisRepository.recentLinks(anyString())).willReturn(Mono.just(Set.of()));
+		given(redisRepository.addRecentLinks(anyString(), anyCollection())).willReturn(Mono.just(true));
+		return redisRepository;
+	}
+
+	private RedisRepository unavailableRedisRepository() {
+		RedisRepository redisRepository = mock(RedisRepository.class);
+		given(redisRepository.tryLease(anyString(), anyString(), any(Duration.class))).willReturn(Mono.error(new IllegalStateException("Redis is down")));
+		given(redisRepository.metadata(anyString())).willReturn(Mono.error(new IllegalStateException("Redis is down")));
+		given(redisRepository.saveMetadata(anyString(), any(FeedMetadata.class))).willReturn(Mono.error(new IllegalStateException("Redis is down")));
+		given(redisRepository.recentLinks(anyString())).willReturn(Mono.error(new IllegalStateException("Redis is down")));
+		given(redisRepository.addRecentLinks(anyString(), anyCollection())).willReturn(Mono.error(new IllegalStateException("Redis is down")));
+		return redisRepository;
+	}
+
+	private FeedWatermarkRepository watermarkRepository() {
+		FeedWatermarkRepository watermarkRepository = mock(FeedWatermarkRepository.class);
+		given(watermarkRepository.findById(any(String.class))).willReturn(Mono.empty());
+		given(watermarkRepository.save(any(FeedWatermark.class))).willAnswer(inv -> Mono.just(inv.getArgument(0)));
+		return watermarkRepository;
+	}
+
+	private List<Outline> outlines() {
+		return IntStream
+				.range(0, FEEDS)
+				.mapToObj(i -> {
+					Outline outline = new Outline();
+					outline.setXmlUrl(server.baseUrl() + "/feed/" + i);
+					return outline;
+				})
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.rometools.rome.feed.synd.SyndEntry;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Test;
+
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeedParserTest {
+
+	private static final String ATOM = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+			"<feed xmlns=\"https://www.w3.org/2005/Atom\"><title>Blog</title><link href=\"http://example.com\"/>" +
+			"<entry><title type=\"html\">First &amp; <b>best</b></title>" +
+			"<link rel=\"self\" href=\"http://example.com/first.atom\"/><link rel=\"alternate\" href=\"http://example.com/first\"/>" +
+			"<source><title>Other</title><updated>2000-01-01T00:00:00Z</updated></source>" +
+			"<updated>2024-01-02T00:00:00Z</updated></entry>" +
+			"<entry><title>Second</title><link href=\"http://example.com/second\"/>" +
+			"<published>2024-01-03T00:00:00Z</published><updated>2024-01-04T00:00:00Z</updated></entry>" +
+			"</feed>";
+
+	private static final String RSS_WITH_GUID = "<?xml version=\"1.0\"?>" +
+			"<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><channel><title>Blog</title>" +
+			"<item><title><![CDATA[Only <guid>]]></title><guid>http://example.com/guid</guid><dc:date>2024-01-05T00:00:00Z</dc:date></item>" +
+			"</channel></rss>";
+
+	private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+	@Test
+	public void shouldParseRss() {
+		//when
+		List<SyndEntry> entries = parse(FeedAggregatorTest.RSS);
+
+		//then
+		assertThat(entries).hasSize(1);
+		assertThat(entries.get(0).getTitle()).isEqualTo("Article");
+		assertThat(entries.get(0).getLink()).isEqualTo("http://example.com/article");
+		assertThat(entries.get(0).getPublishedDate().toInstant()).isEqualTo(Instant.parse("2024-01-01T00:00:00Z"));
+	}
+
+	@Test
+	public void shouldParseAtomWithHttpsNamespace() {
+		//when
+		List<SyndEntry> entries = parse(ATOM);
+
+		//then
+		assertThat(entries).hasSize(2);
+		assertThat(entries.get(0).getTitle()).isEqualTo("First & best");
+		assertThat(entries.get(0).getLink()).isEqualTo("http://example.com/first");
+		assertThat(entries.get(0).getPublishedDate().toInstant()).isEqualTo(Instant.parse("2024-01-02T00:00:00Z"));
+		assertThat(entries.get(1).getTitle()).isEqualTo("Second");
+		assertThat(entries.get(1).getLink()).isEqualTo("http://example.com/second");
+		assertThat(entries.get(1).getPublishedDate().toInstant()).isEqualTo(Instant.parse("2024-01-03T00:00:00Z"));
+	}
+
+	@Test
+	public void shouldFallBackToGuidAndDublinCoreDate() {
+		//when
+		List<SyndEntry> entries = parse(RSS_WITH_GUID);
+
+		//then
+		assertThat(entries).hasSize(1);
+		assertThat(entries.get(0).getTitle()).isEqualTo("Only <guid>");
+		assertThat(entries.get(0).getLink()).isEqualTo("http://example.com/guid");
+		assertThat(entries.get(0).getPublishedDate().toInstant()).isEqualTo(Instant.parse("2024-01-05T00:00:00Z"));
+	}
+
+	@Test
+	public void shouldReleaseBufferWhenCancelled() {
+		//given
+		NettyDataBuffer buffer = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT).wrap(ATOM.getBytes(UTF_8));
+
+		//when
+		List<SyndEntry> first = FeedParser.parse(buffer).take(1).collectList().block();
+
+		//then
+		assertThat(first).hasSize(1);
+		assertThat(buffer.getNativeBuffer().refCnt()).isZero();
+	}
+
+	private List<SyndEntry> parse(String feed) {
+		return FeedParser.parse(bufferFactory.wrap(feed.getBytes(UTF_8))).collectList().block();
+	}
+
+}
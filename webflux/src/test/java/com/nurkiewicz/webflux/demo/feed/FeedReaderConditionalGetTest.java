@@ -0,0 +1,109 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.net.URL;
+import java.time.Duration;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeedReaderConditionalGetTest {
+
+	private static final String ETAG = "\"v1\"";
+	private static final String LAST_MODIFIED = "Mon, 01 Jan 2024 00:00:00 GMT";
+
+	private final WireMockServer server = new WireMockServer(options().dynamicPort());
+	private final FeedReader feedReader = new FeedReader(WebClient.create(), new HostLimiter(1, Duration.ZERO), new ByteBudget(DataSize.ofMegabytes(64)));
+
+	@Before
+	public void startServer() {
+		server.start();
+		server.stubFor(get(urlEqualTo("/etag")).willReturn(aResponse()
+				.withHeader("ETag", ETAG)
+				.withBody(FeedAggregatorTest.RSS)));
+		server.stubFor(get(urlEqualTo("/etag"))
+				.withHeader("If-None-Match", equalTo(ETAG))
+				.atPriority(1)
+				.willReturn(aResponse().withStatus(304)));
+		server.stubFor(get(urlEqualTo("/last-modified")).willReturn(aResponse()
+				.withHeader("Last-Modified", LAST_MODIFIED)
+				.withBody(FeedAggregatorTest.RSS)));
+		server.stubFor(get(urlEqualTo("/last-modified"))
+				.withHeader("If-Modified-Since", equalTo(LAST_MODIFIED))
+				.atPriority(1)
+				.willReturn(aResponse().withStatus(304)));
+		server.stubFor(get(urlEqualTo("/plain")).willReturn(aResponse()
+				.withBody(FeedAggregatorTest.RSS)));
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldDownloadAndParseUnchangedFeedOnlyOnce() throws Exception {
+		for (String path : new String[]{"/etag", "/last-modified"}) {
+			//given
+			long bytesBefore = feedReader.bytesDownloaded();
+			long parsesBefore = feedReader.parses();
+			URL url = new URL(server.baseUrl() + path);
+
+			//when
+			for (int i = 0; i < 10; i++) {
+				assertThat(feedReader.fetch(url).collectList().block()).hasSize(i == 0 ? 1 : 0);
+			}
+
+			//then
+			server.verify(10, getRequestedFor(urlEqualTo(path)));
+			assertThat(feedReader.parses() - parsesBefore).isEqualTo(1);
+			assertThat(feedReader.bytesDownloaded() - bytesBefore).isEqualTo(FeedAggregatorTest.RSS.getBytes(UTF_8).length);
+		}
+	}
+
+	@Test
+	public void shouldSendValidatorsOnlyOnceCallerRemembersThem() throws Exception {
+		//given
+		URL url = new URL(server.baseUrl() + "/etag");
+		FeedReader.Modified<?> first = feedReader.fetchModified(url).block();
+
+		//when
+		FeedReader.Modified<?> unprocessed = feedReader.fetchModified(url).block();
+		feedReader.remember(url.toString(), unprocessed.getValidators());
+		FeedReader.Modified<?> processed = feedReader.fetchModified(url).block();
+
+		//then
+		assertThat(first.getValidators().getEtag()).isEqualTo(ETAG);
+		assertThat(unprocessed).isNotNull();
+		assertThat(processed).isNull();
+		server.verify(2, getRequestedFor(urlEqualTo("/etag")).withoutHeader("If-None-Match"));
+	}
+
+	@Test
+	public void shouldAlwaysDownloadFeedWithoutValidators() throws Exception {
+		//given
+		URL url = new URL(server.baseUrl() + "/plain");
+
+		//when
+		for (int i = 0; i < 3; i++) {
+			feedReader.fetch(url).blockLast();
+		}
+
+		//then
+		assertThat(feedReader.parses()).isEqualTo(3);
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.Options;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many concurrent fetches of large feeds, memory held by downloaded bodies must stay within {@link ByteBudget}
+ */
+public class FeedReaderMemoryTest {
+
+	private static final Logger log = LoggerFactory.getLogger(FeedReaderMemoryTest.class);
+
+	private static final int FEEDS = 64;
+	private static final int CONCURRENCY = 32;
+	private static final int ITEMS_PER_FEED = 20_000;
+	private static final DataSize BUDGET = DataSize.ofMegabytes(16);
+
+	/**
+	 * Announces <code>Content-Length</code>, so every fetch acquires the whole body upfront
+	 */
+	private final WireMockServer server = new WireMockServer(options()
+			.dynamicPort()
+			.useChunkedTransferEncoding(Options.ChunkedEncodingPolicy.NEVER));
+
+	/**
+	 * Size unknown until the body ends, every fetch starts with {@link ByteBudget#DEFAULT_ESTIMATE} and grows
+	 */
+	private final WireMockServer chunkedServer = new WireMockServer(options()
+			.dynamicPort()
+			.useChunkedTransferEncoding(Options.ChunkedEncodingPolicy.ALWAYS));
+	private final String largeFeed = largeFeed();
+
+	@Before
+	public void startServer() {
+		server.start();
+		server.stubFor(get(urlPathMatching("/large/.*")).willReturn(aResponse().withBody(largeFeed)));
+		chunkedServer.start();
+		chunkedServer.stubFor(get(urlPathMatching("/large/.*")).willReturn(aResponse().withBody(largeFeed)));
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+		chunkedServer.stop();
+	}
+
+	@Test
+	public void shouldKeepDownloadedBytesWithinBudget() {
+		//given
+		ByteBudget budget = new ByteBudget(BUDGET);
+		FeedReader feedReader = new FeedReader(WebClient.create(), new HostLimiter(CONCURRENCY, Duration.ZERO), budget);
+
+		//when
+		long entries = fetchAll(feedReader, server);
+
+		//then
+		assertThat(entries).isEqualTo((long) FEEDS * ITEMS_PER_FEED);
+		assertThat(budget.peak()).isLessThanOrEqualTo(BUDGET.toBytes());
+		assertThat(budget.used()).isZero();
+		assertThat(budget.waiting()).isZero();
+	}
+
+	/**
+	 * Only the oldest body may grow beyond the budget, others stop reading until it is freed
+	 */
+	@Test
+	public void shouldKeepChunkedBodiesWithinBudget() {
+		//given
+		ByteBudget budget = new ByteBudget(BUDGET);
+		FeedReader feedReader = new FeedReader(WebClient.create(), new HostLimiter(CONCURRENCY, Duration.ZERO), budget);
+
+		//when
+		long entries = fetchAll(feedReader, chunkedServer);
+
+		//then
+		assertThat(entries).isEqualTo((long) FEEDS * ITEMS_PER_FEED);
+		assertThat(budget.peak()).isLessThanOrEqualTo(BUDGET.toBytes() + largeFeed.getBytes(UTF_8).length);
+		assertThat(budget.used()).isZero();
+		assertThat(budget.waiting()).isZero();
+	}
+
+	@Test
+	public void shouldHoldManyBodiesAtOnceWithoutBudget() {
+		//given
+		ByteBudget unlimited = new ByteBudget(DataSize.ofGigabytes(64));
+		FeedReader feedReader = new FeedReader(WebClient.create(), new HostLimiter(CONCURRENCY, Duration.ZERO), unlimited);
+
+		//when
+		long entries = fetchAll(feedReader, server);
+
+		//then
+		assertThat(entries).isEqualTo((long) FEEDS * ITEMS_PER_FEED);
+		assertThat(unlimited.peak()).isGreaterThan(BUDGET.toBytes());
+	}
+
+	private long fetchAll(FeedReader feedReader, WireMockServer server) {
+		AtomicLong peakHeap = new AtomicLong();
+		AtomicLong peakDirect = new AtomicLong();
+		Disposable sampling = Flux.interval(Duration.ofMillis(10)).subscribe(x -> {
+			peakHeap.accumulateAndGet(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max);
+			peakDirect.accumulateAndGet(PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory(), Math::max);
+		});
+		try {
+			Long entries = Flux.range(0, FEEDS)
+					.map(i -> url(server, i))
+					.flatMap(url -> feedReader.fetch(url).count(), CONCURRENCY)
+					.reduce(0L, Long::sum)
+					.block(Duration.ofMinutes(2));
+			log.info("Feed size {} bytes, peak heap {} MiB, peak pooled direct memory {} MiB",
+					largeFeed.getBytes(UTF_8).length, peakHeap.get() >> 20, peakDirect.get() >> 20);
+			return entries;
+		} finally {
+			sampling.dispose();
+		}
+	}
+
+	private static URL url(WireMockServer server, int i) {
+		try {
+			return new URL(server.baseUrl() + "/large/" + i);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static String largeFeed() {
+		String items = IntStream
+				.range(0, ITEMS_PER_FEED)
+				.mapToObj(i -> "<item><title>Article " + i + "</title>" +
+						"<link>http://example.com/article/" + i + "</link>" +
+						"<description>Lorem ipsum dolor sit amet, consectetur adipiscing elit</description>" +
+						"<pubDate>Mon, 01 Jan 2024 00:00:00 GMT</pubDate></item>")
+				.collect(Collectors.joining());
+		return "<?xml version=\"1.0\"?><rss version=\"2.0\"><channel><title>Large</title>" + items + "</channel></rss>";
+	}
+
+}
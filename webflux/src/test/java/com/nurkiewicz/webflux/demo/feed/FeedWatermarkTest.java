@@ -0,0 +1,74 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeedWatermarkTest {
+
+	private static final Instant NOW = Instant.parse("2024-01-01T12:00:00Z");
+
+	@Test
+	public void shouldRecogniseFetchedArticlesByLink() {
+		//given
+		FeedWatermark watermark = FeedWatermark.empty("feed").advance(List.of(article("a", 10), article("b", 20)));
+
+		//when
+		boolean known = watermark.isKnown(article("a", 10));
+		boolean unknown = watermark.isKnown(article("c", 5));
+
+		//then
+		assertThat(known).isTrue();
+		assertThat(unknown).isFalse();
+	}
+
+	@Test
+	public void shouldNotTreatBackdatedNewArticleAsKnown() {
+		//given
+		FeedWatermark watermark = FeedWatermark.empty("feed").advance(List.of(article("a", 10), article("b", 20)));
+
+		//when
+		boolean known = watermark.isKnown(article("backdated", 3600));
+
+		//then
+		assertThat(known).isFalse();
+	}
+
+	@Test
+	public void shouldNotChangeWhenSameArticlesFetchedAgain() {
+		//given
+		FeedWatermark watermark = FeedWatermark.empty("feed").advance(List.of(article("a", 10), article("b", 20)));
+
+		//when
+		FeedWatermark advanced = watermark.advance(List.of(article("a", 10), article("b", 20)));
+
+		//then
+		assertThat(advanced).isSameAs(watermark);
+	}
+
+	@Test
+	public void shouldDropLinksThatLeftTheFeedFirst() {
+		//given
+		List<Article> left = IntStream.range(0, 10).mapToObj(i -> article("old-" + i, 1000 + i)).collect(Collectors.toList());
+		List<Article> current = IntStream.range(0, FeedWatermark.MAX_RECENT_LINKS).mapToObj(i -> article("new-" + i, i)).collect(Collectors.toList());
+
+		//when
+		FeedWatermark watermark = FeedWatermark.empty("feed").advance(left).advance(current);
+
+		//then
+		assertThat(watermark.getRecentLinks()).hasSize(FeedWatermark.MAX_RECENT_LINKS);
+		assertThat(watermark.isKnown(left.get(0))).isFalse();
+		assertThat(current).allMatch(watermark::isKnown);
+	}
+
+	private static Article article(String slug, int ageSeconds) {
+		return new Article(URI.create("http://example.com/" + slug), NOW.minusSeconds(ageSeconds), slug);
+	}
+
+}
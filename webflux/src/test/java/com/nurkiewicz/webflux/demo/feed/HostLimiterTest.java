@@ -0,0 +1,79 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HostLimiterTest {
+
+	@Test
+	public void shouldLimitConcurrencyPerHostButNotAcrossHosts() {
+		//given
+		HostLimiter limiter = new HostLimiter(3, Duration.ZERO);
+		ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+		ConcurrentHashMap<String, AtomicInteger> peak = new ConcurrentHashMap<>();
+
+		//when
+		Flux.range(0, 60)
+				.map(i -> "host-" + (i % 2))
+				.flatMap(host -> limiter.limit(host, Mono.defer(() -> {
+					int current = inFlight.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+					peak.computeIfAbsent(host, h -> new AtomicInteger()).accumulateAndGet(current, Math::max);
+					return Mono.delay(Duration.ofMillis(10))
+							.doFinally(s -> inFlight.get(host).decrementAndGet());
+				})), 60)
+				.blockLast();
+
+		//then
+		assertThat(peak.get("host-0").get()).isEqualTo(3);
+		assertThat(peak.get("host-1").get()).isEqualTo(3);
+		assertThat(limiter.waiting()).isZero();
+	}
+
+	@Test
+	public void shouldSpaceOutRequestsToSameHost() {
+		//given
+		HostLimiter limiter = new HostLimiter(10, Duration.ofMillis(50));
+		List<Long> starts = new CopyOnWriteArrayList<>();
+
+		//when
+		Flux.range(0, 5)
+				.flatMap(i -> limiter.limit("example.com", Mono.fromRunnable(() -> starts.add(System.nanoTime()))))
+				.blockLast();
+
+		//then
+		for (int i = 1; i < starts.size(); i++) {
+			assertThat(Duration.ofNanos(starts.get(i) - starts.get(i - 1))).isGreaterThanOrEqualTo(Duration.ofMillis(45));
+		}
+		assertThat(limiter.delayed()).isEqualTo(4);
+	}
+
+	@Test
+	public void shouldNotLeakPermitsWhenCancelled() {
+		//given
+		HostLimiter limiter = new HostLimiter(1, Duration.ZERO);
+		Sinks.Empty<Void> never = Sinks.empty();
+		Disposable holding = limiter.limit("example.com", never.asMono()).subscribe();
+		Disposable waiting = limiter.limit("example.com", Mono.just("waiting")).subscribe();
+		assertThat(limiter.waiting()).isEqualTo(1);
+
+		//when
+		waiting.dispose();
+		holding.dispose();
+
+		//then
+		assertThat(limiter.waiting()).isZero();
+		assertThat(limiter.limit("example.com", Mono.just("next")).block(Duration.ofSeconds(1))).isEqualTo("next");
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.nurkiewicz.webflux.demo.IntegrationTest;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Latency of <code>/articles/newest/10</code> as Mongo (from testcontainers) grows:
+ * indexed query vs. previous <code>findAll().sort().take()</code> vs. in-memory cache.
+ * Articles go to a dedicated collection, dropped afterwards, so the shared container stays intact.
+ */
+public class NewestArticlesLatencyTest extends IntegrationTest {
+
+	private static final Logger log = LoggerFactory.getLogger(NewestArticlesLatencyTest.class);
+
+	private static final String COLLECTION = "articleLatency";
+	private static final int[] SIZES = {10_000, 100_000, 1_000_000};
+	private static final int FULL_SCAN_MAX_SIZE = 100_000;
+	private static final int LIMIT = 10;
+	private static final int RUNS = 20;
+	private static final int BATCH = 1000;
+
+	@Autowired
+	private ReactiveMongoTemplate mongoTemplate;
+
+	private NewestArticles newestArticles;
+
+	@Before
+	public void setup() {
+		Assume.assumeTrue("Enable with -Pmongo.benchmarks", Boolean.getBoolean("mongo.benchmarks"));
+		mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index("publishedDate", Sort.Direction.DESC)).block();
+		ArticleRepository emptyRepository = mock(ArticleRepository.class);
+		given(emptyRepository.findAllByOrderByPublishedDateDesc(any())).willReturn(Flux.empty());
+		newestArticles = new NewestArticles(emptyRepository, null, false);
+		newestArticles.init();
+	}
+
+	@After
+	public void cleanup() {
+		if (newestArticles != null) {
+			newestArticles.close();
+			mongoTemplate.dropCollection(COLLECTION).block();
+		}
+	}
+
+	@Test
+	public void indexedQueryShouldReadOnlyLimitDocuments() {
+		Instant start = Instant.parse("2100-01-01T00:00:00Z");
+		int stored = 0;
+		for (int size : SIZES) {
+			//given
+			Flux.range(stored, size - stored)
+					.map(i -> new Article(URI.create("http://example.com/latency/" + i), start.plusSeconds(i), "Article " + i))
+					.buffer(BATCH)
+					.concatMap(batch -> mongoTemplate.insert(batch, COLLECTION))
+					.blockLast();
+			stored = size;
+			List<Article> expected = newest().collectList().block();
+			newestArticles.addAll(expected);
+
+			//when
+			double indexedMicros = averageMicros(() -> newest().collectList().block());
+			double cachedMicros = averageMicros(() -> newestArticles.newest(LIMIT).orElseThrow());
+			double fullScanMicros = size <= FULL_SCAN_MAX_SIZE ?
+					averageMicros(() -> mongoTemplate
+							.findAll(Article.class, COLLECTION)
+							.sort(Comparator.comparing(Article::getPublishedDate, Comparator.reverseOrder()))
+							.take(LIMIT)
+							.collectList()
+							.block()) :
+					Double.NaN;
+
+			//then
+			log.info("{} articles: indexed query {} us, cache {} us, findAll + sort {} us",
+					size, Math.round(indexedMicros), Math.round(cachedMicros), Math.round(fullScanMicros));
+			assertThat(expected).extracting(Article::getTitle).startsWith("Article " + (size - 1), "Article " + (size - 2));
+			assertThat(newestArticles.newest(LIMIT).orElseThrow()).extracting(Article::getLink).isEqualTo(
+					expected.stream().map(Article::getLink).collect(Collectors.toList()));
+		}
+	}
+
+	private Flux<Article> newest() {
+		return mongoTemplate.find(new Query().with(Sort.by(Sort.Direction.DESC, "publishedDate")).limit(LIMIT), Article.class, COLLECTION);
+	}
+
+	private static double averageMicros(Runnable query) {
+		query.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			query.run();
+		}
+		return (System.nanoTime() - start) / 1000.0 / RUNS;
+	}
+
+}
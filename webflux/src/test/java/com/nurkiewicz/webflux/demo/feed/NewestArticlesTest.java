@@ -0,0 +1,81 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.data.domain.Pageable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class NewestArticlesTest {
+
+	private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+	private final ArticleRepository articleRepository = mock(ArticleRepository.class);
+	private final ArticleChangeStream articleChangeStream = mock(ArticleChangeStream.class);
+
+	@Test
+	public void shouldKeepOnlyNewestArticlesInOrder() {
+		//given
+		given(articleRepository.findAllByOrderByPublishedDateDesc(any(Pageable.class))).willReturn(Flux.just(article(0)));
+		NewestArticles newestArticles = new NewestArticles(articleRepository, articleChangeStream, false);
+		newestArticles.init();
+
+		//when
+		newestArticles.addAll(articles(1, NewestArticles.CAPACITY + 50));
+		newestArticles.addAll(List.of(article(-1)));
+
+		//then
+		List<Article> newest = newestArticles.newest(3).get();
+		assertThat(newest).extracting(Article::getTitle).containsExactly("-1", "0", "1");
+		assertThat(newestArticles.newest(NewestArticles.CAPACITY).get()).hasSize(NewestArticles.CAPACITY);
+		assertThat(newestArticles.newest(NewestArticles.CAPACITY + 1)).isEmpty();
+	}
+
+	@Test
+	public void shouldNotServeFromMemoryBeforeInitialLoad() {
+		//given
+		given(articleRepository.findAllByOrderByPublishedDateDesc(any(Pageable.class))).willReturn(Flux.never());
+		NewestArticles newestArticles = new NewestArticles(articleRepository, articleChangeStream, false);
+		newestArticles.init();
+
+		//when
+		newestArticles.addAll(articles(0, 10));
+
+		//then
+		assertThat(newestArticles.newest(5)).isEmpty();
+	}
+
+	@Test
+	public void shouldServeArticlesStoredByOtherInstancesFromChangeStream() {
+		//given
+		given(articleRepository.findAllByOrderByPublishedDateDesc(any(Pageable.class))).willReturn(Flux.just(article(10)));
+		given(articleChangeStream.newArticles()).willReturn(Flux.just(article(5), article(1)));
+		NewestArticles newestArticles = new NewestArticles(articleRepository, articleChangeStream, true);
+
+		//when
+		newestArticles.init();
+
+		//then
+		assertThat(newestArticles.newest(5).get()).extracting(Article::getTitle).containsExactly("1", "5", "10");
+		newestArticles.close();
+	}
+
+	private static List<Article> articles(int from, int to) {
+		return IntStream.range(from, to).mapToObj(NewestArticlesTest::article).collect(Collectors.toList());
+	}
+
+	private static Article article(int age) {
+		return new Article(URI.create("http://example.com/" + age), NOW.minusSeconds(age), String.valueOf(age));
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OpmlReaderReloadTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldParseClasspathOpmlOnlyOnce() {
+		//given
+		OpmlReader opmlReader = new OpmlReader("/feed-en.xml");
+		OpmlReader.FeedList first = opmlReader.feedList().block();
+
+		//when
+		OpmlReader.FeedList second = opmlReader.feedList().block();
+
+		//then
+		assertThat(second).isSameAs(first);
+		assertThat(second.getVersion()).isEqualTo(1);
+		assertThat(second.getAdded()).hasSize(17);
+	}
+
+	@Test
+	public void shouldReloadFileOnlyWhenChangedAndReportDifference() throws IOException {
+		//given
+		Path opml = folder.newFile("feeds.xml").toPath();
+		write(opml, "a", "b", "c");
+		OpmlReader opmlReader = new OpmlReader("file:" + opml);
+		OpmlReader.FeedList initial = opmlReader.feedList().block();
+		assertThat(opmlReader.feedList().block()).isSameAs(initial);
+
+		//when
+		write(opml, "b", "c", "d", "e");
+		Files.setLastModifiedTime(opml, FileTime.from(Instant.now().plusSeconds(60)));
+		OpmlReader.FeedList changed = opmlReader.feedList().block();
+
+		//then
+		assertThat(changed.getVersion()).isEqualTo(initial.getVersion() + 1);
+		assertThat(changed.getAdded()).containsExactlyInAnyOrder(url("d"), url("e"));
+		assertThat(changed.getRemoved()).containsExactly(url("a"));
+		assertThat(changed.getFeeds()).containsExactlyInAnyOrder(url("b"), url("c"), url("d"), url("e"));
+	}
+
+	private static void write(Path opml, String... feeds) throws IOException {
+		String outlines = Arrays
+				.stream(feeds)
+				.map(feed -> "<outline type=\"rss\" text=\"" + feed + "\" title=\"" + feed + "\" xmlUrl=\"" + url(feed) + "\"/>")
+				.collect(Collectors.joining());
+		Files.write(opml, ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><opml version=\"1.0\"><head><title>Feeds</title></head><body>" +
+				outlines + "</body></opml>").getBytes(UTF_8));
+	}
+
+	private static String url(String feed) {
+		return "http://example.com/" + feed + "/rss";
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PollScheduleTest {
+
+	private static final Logger log = LoggerFactory.getLogger(PollScheduleTest.class);
+
+	private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+	private final PollSchedule schedule = new PollSchedule(new Random(42));
+
+	@Test
+	public void newFeedsShouldBeDueImmediatelyAndOnlyOnce() {
+		//given
+		schedule.update(Set.of("a", "b"), START);
+
+		//when
+		List<String> due = schedule.due(START);
+
+		//then
+		assertThat(due).containsExactlyInAnyOrder("a", "b");
+		assertThat(schedule.due(START.plus(PollSchedule.MAX_INTERVAL.multipliedBy(2)))).isEmpty();
+	}
+
+	@Test
+	public void shouldBackOffIdleFeedUpToMaxInterval() {
+		//given
+		schedule.add("idle", START);
+		Instant now = START;
+
+		//when
+		for (int i = 0; i < 50; i++) {
+			assertThat(schedule.due(now)).containsExactly("idle");
+			now = schedule.completed("idle", now, false, List.of());
+		}
+
+		//then
+		assertThat(schedule.interval("idle")).isEqualTo(PollSchedule.MAX_INTERVAL);
+	}
+
+	@Test
+	public void shouldPollActiveFeedTwicePerPublicationGap() {
+		//given
+		schedule.add("active", START);
+		schedule.due(START);
+		List<Instant> entries = IntStream
+				.range(0, 20)
+				.mapToObj(i -> START.minus(Duration.ofMinutes(10L * i)))
+				.collect(Collectors.toList());
+
+		//when
+		schedule.completed("active", START, true, entries);
+
+		//then
+		assertThat(schedule.interval("active")).isEqualTo(Duration.ofMinutes(5));
+	}
+
+	@Test
+	public void shouldFollowNextPollOfAnotherInstance() {
+		//given
+		schedule.update(Set.of("shared", "far"), START);
+		schedule.due(START);
+
+		//when
+		Instant next = schedule.postponed("shared", START, START.plus(Duration.ofHours(1)));
+		Instant far = schedule.postponed("far", START, START.plus(Duration.ofDays(30)));
+
+		//then
+		assertThat(next).isEqualTo(START.plus(Duration.ofHours(1)));
+		assertThat(far).isEqualTo(START.plus(PollSchedule.MAX_INTERVAL));
+		assertThat(schedule.due(START.plus(Duration.ofMinutes(59)))).isEmpty();
+		assertThat(schedule.due(next)).containsExactly("shared");
+	}
+
+	@Test
+	public void removedFeedShouldNotComeBack() {
+		//given
+		schedule.update(Set.of("kept", "removed"), START);
+		schedule.due(START);
+		schedule.completed("kept", START, true, List.of());
+		schedule.completed("removed", START, true, List.of());
+
+		//when
+		schedule.update(Set.of("kept"), START);
+
+		//then
+		assertThat(schedule.due(START.plus(PollSchedule.MAX_INTERVAL.multipliedBy(2)))).containsExactly("kept");
+		assertThat(schedule.size()).isEqualTo(1);
+	}
+
+	/**
+	 * Simulates a day of polling feeds that publish at very different rates, from every 10 minutes to weekly,
+	 * plus feeds that never publish. Compares with polling every feed every 30 seconds.
+	 */
+	@Test
+	public void shouldDiscoverAlmostAllArticlesWithFractionOfRequests() {
+		//given
+		int feeds = 10_000;
+		Duration day = Duration.ofDays(1);
+		Duration step = Duration.ofSeconds(10);
+		Random random = new Random(7);
+		List<List<Instant>> publications = new ArrayList<>();
+		for (int i = 0; i < feeds; i++) {
+			publications.add(publications(random, START.minus(Duration.ofDays(7)), START.plus(day)));
+			schedule.add(String.valueOf(i), START);
+		}
+		int[] seen = new int[feeds];
+		for (int i = 0; i < feeds; i++) {
+			seen[i] = (int) publications.get(i).stream().filter(p -> p.isBefore(START)).count();
+		}
+		long requests = 0;
+		long discovered = 0;
+		double delaySeconds = 0;
+
+		//when
+		for (Instant now = START; now.isBefore(START.plus(day)); now = now.plus(step)) {
+			for (String feed : schedule.due(now)) {
+				requests++;
+				int id = Integer.parseInt(feed);
+				List<Instant> all = publications.get(id);
+				int published = seen[id];
+				while (published < all.size() && !all.get(published).isAfter(now)) {
+					delaySeconds += Duration.between(all.get(published), now).toSeconds();
+					published++;
+				}
+				boolean changed = published > seen[id];
+				discovered += published - seen[id];
+				seen[id] = published;
+				List<Instant> entries = all.subList(Math.max(0, published - 20), published);
+				schedule.completed(feed, now, changed, entries);
+			}
+		}
+
+		//then
+		long total = IntStream.range(0, feeds)
+				.mapToLong(i -> publications.get(i).stream().filter(p -> !p.isBefore(START)).count())
+				.sum();
+		long fixedRequests = feeds * (day.toSeconds() / 30);
+		log.info("Fixed 30 s interval: {} requests/h, {} articles/h, average delay 15 s", fixedRequests / 24, total / 24);
+		log.info("Adaptive: {} requests/h, {} articles/h, average delay {} s",
+				requests / 24, discovered / 24, Math.round(delaySeconds / Math.max(1, discovered)));
+		assertThat(requests).isLessThan(fixedRequests / 10);
+		assertThat(discovered).isGreaterThan(total * 95 / 100);
+	}
+
+	/**
+	 * 20% of feeds are dead, the rest publish at random with average gap between 10 minutes and a week
+	 */
+	private static List<Instant> publications(Random random, Instant from, Instant to) {
+		List<Instant> publications = new ArrayList<>();
+		if (random.nextDouble() < 0.2) {
+			return publications;
+		}
+		double gapSeconds = 600 * Math.pow(7 * 24 * 6, random.nextDouble());
+		for (Instant t = from; t.isBefore(to); ) {
+			t = t.plusSeconds((long) (-Math.log(1 - random.nextDouble()) * gapSeconds));
+			if (t.isBefore(to)) {
+				publications.add(t);
+			}
+		}
+		return publications;
+	}
+
+}
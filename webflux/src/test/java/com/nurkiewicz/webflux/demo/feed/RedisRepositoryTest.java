@@ -0,0 +1,88 @@
+package com.nurkiewicz.webflux.demo.feed;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.nurkiewicz.webflux.demo.IntegrationTest;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedisRepositoryTest extends IntegrationTest {
+
+	@Autowired
+	private RedisRepository redisRepository;
+
+	private final String feed = "http://example.com/" + UUID.randomUUID() + "/rss";
+
+	@Test
+	public void shouldGrantLeaseToExactlyOneOfManyInstances() {
+		//when
+		List<Boolean> granted = Flux
+				.range(0, 100)
+				.flatMap(instance -> redisRepository.tryLease(feed, "instance-" + instance, Duration.ofMinutes(1)))
+				.collectList()
+				.block();
+
+		//then
+		assertThat(granted).containsOnlyOnce(true);
+	}
+
+	@Test
+	public void shouldLetOwnerRenewLease() {
+		//given
+		redisRepository.tryLease(feed, "owner", Duration.ofMinutes(1)).block();
+
+		//when
+		Boolean renewed = redisRepository.tryLease(feed, "owner", Duration.ofMinutes(1)).block();
+
+		//then
+		assertThat(renewed).isTrue();
+		assertThat(redisRepository.tryLease(feed, "other", Duration.ofMinutes(1)).block()).isFalse();
+	}
+
+	@Test
+	public void shouldStoreMetadata() {
+		//given
+		FeedMetadata metadata = new FeedMetadata("\"v1\"", null, "abc", Instant.parse("2024-01-01T00:00:00Z"));
+
+		//when
+		redisRepository.saveMetadata(feed, metadata).block();
+
+		//then
+		FeedMetadata loaded = redisRepository.metadata(feed).block();
+		assertThat(loaded.getEtag()).isEqualTo("\"v1\"");
+		assertThat(loaded.getLastModified()).isNull();
+		assertThat(loaded.getEntryHash()).isEqualTo("abc");
+		assertThat(loaded.getNextPoll()).isEqualTo(Instant.parse("2024-01-01T00:00:00Z"));
+		assertThat(redisRepository.metadata(feed + "/unknown").blockOptional()).isEmpty();
+	}
+
+	@Test
+	public void shouldKeepOnlyMostRecentlyPublishedLinks() {
+		//given
+		Instant now = Instant.now();
+		List<Article> articles = IntStream
+				.range(0, RedisRepository.MAX_RECENT_LINKS + 10)
+				.mapToObj(i -> new Article(URI.create("http://example.com/" + i), now.minusSeconds(i), "Article " + i))
+				.collect(Collectors.toList());
+
+		//when
+		redisRepository.addRecentLinks(feed, articles).block();
+
+		//then
+		assertThat(redisRepository.recentLinks(feed).block())
+				.hasSize(RedisRepository.MAX_RECENT_LINKS)
+				.contains("http://example.com/0")
+				.doesNotContain("http://example.com/" + (RedisRepository.MAX_RECENT_LINKS + 9));
+	}
+
+}
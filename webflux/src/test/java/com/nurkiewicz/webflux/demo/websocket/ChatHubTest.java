@@ -0,0 +1,187 @@
+package com.nurkiewicz.webflux.demo.websocket;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChatHubTest {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+	private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+	private final ChatHub hub = new ChatHub(4, 5, 16, bufferFactory);
+
+	@After
+	public void dispose() {
+		hub.dispose();
+	}
+
+	@Test
+	public void shouldReplayLastMessagesOfRoomToNewMember() {
+		//given
+		ChatHub.Member first = hub.join("room");
+		IntStream.range(0, 8).forEach(i -> hub.publish("room", "m" + i));
+
+		//when
+		ChatHub.Member second = hub.join("room");
+		hub.publish("room", "m8");
+
+		//then
+		StepVerifier.create(texts(second).take(6))
+				.expectNext("m3", "m4", "m5", "m6", "m7", "m8")
+				.expectComplete()
+				.verify(TIMEOUT);
+		first.leave();
+		second.leave();
+	}
+
+	@Test
+	public void shouldNotMixRooms() {
+		//given
+		ChatHub.Member a = hub.join("a");
+		ChatHub.Member b = hub.join("b");
+
+		//when
+		hub.publish("a", "to a");
+		hub.publish("b", "to b");
+
+		//then
+		StepVerifier.create(texts(a).take(1)).expectNext("to a").expectComplete().verify(TIMEOUT);
+		StepVerifier.create(texts(b).take(1)).expectNext("to b").expectComplete().verify(TIMEOUT);
+	}
+
+	@Test
+	public void shouldDeliverConcurrentMessagesToEveryMemberInSameOrder() throws InterruptedException {
+		//given
+		ChatHub bigQueues = new ChatHub(2, 0, 100_000, bufferFactory);
+		List<ChatHub.Member> members = IntStream.range(0, 3)
+				.mapToObj(i -> bigQueues.join("room"))
+				.collect(Collectors.toList());
+		ExecutorService publishers = Executors.newFixedThreadPool(8);
+
+		//when
+		for (int p = 0; p < 8; p++) {
+			int publisher = p;
+			publishers.submit(() -> IntStream.range(0, 1000).forEach(i -> bigQueues.publish("room", publisher + ":" + i)));
+		}
+		publishers.shutdown();
+		assertThat(publishers.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+		//then
+		List<List<String>> received = members.stream()
+				.map(member -> texts(member).take(8000).collectList().block(TIMEOUT))
+				.collect(Collectors.toList());
+		assertThat(received.get(0)).hasSize(8000).doesNotHaveDuplicates();
+		assertThat(received.get(1)).isEqualTo(received.get(0));
+		assertThat(received.get(2)).isEqualTo(received.get(0));
+		bigQueues.dispose();
+	}
+
+	@Test
+	public void shouldEvictSlowMemberWithoutAffectingOthers() throws Exception {
+		//given
+		ChatHub.Member slow = hub.join("room");
+		ChatHub.Member fast = hub.join("room");
+		CompletableFuture<List<String>> fastReceived = texts(fast).take(100).collectList().toFuture();
+
+		//when
+		IntStream.range(0, 100).forEach(i -> hub.publish("room", "m" + i));
+
+		//then
+		assertThat(fastReceived.get(5, TimeUnit.SECONDS)).hasSize(100);
+		StepVerifier.create(slow.evicted()).expectComplete().verify(TIMEOUT);
+		assertThat(hub.evicted()).isEqualTo(1);
+	}
+
+	@Test
+	public void shouldShareOneEncodedBufferBetweenMembersAndReleaseItOnceRoomIsGone() {
+		//given
+		List<ChatHub.Member> members = IntStream.range(0, 10)
+				.mapToObj(i -> hub.join("room"))
+				.collect(Collectors.toList());
+
+		//when
+		hub.publish("room", "Zażółć gęślą jaźń");
+		List<DataBuffer> received = members.stream()
+				.map(member -> member.messages().blockFirst(TIMEOUT))
+				.collect(Collectors.toList());
+
+		//then
+		ByteBuf shared = original(received.get(0));
+		assertThat(received).allSatisfy(buffer -> {
+			assertThat(original(buffer)).isSameAs(shared);
+			assertThat(buffer.toString(UTF_8)).isEqualTo("Zażółć gęślą jaźń");
+		});
+		received.forEach(DataBufferUtils::release);
+		assertThat(shared.refCnt()).as("still in room history").isEqualTo(1);
+
+		//when
+		members.forEach(ChatHub.Member::leave);
+		awaitProcessed("room");
+
+		//then
+		assertThat(shared.refCnt()).isZero();
+	}
+
+	@Test
+	public void shouldReleaseMessagesQueuedForMemberThatLeftWithoutReading() {
+		//given
+		ChatHub.Member idle = hub.join("room");
+		ChatHub.Member reader = hub.join("room");
+		hub.publish("room", "unread");
+		DataBuffer read = reader.messages().blockFirst(TIMEOUT);
+		ByteBuf shared = original(read);
+		DataBufferUtils.release(read);
+
+		//when
+		idle.leave();
+		reader.leave();
+		awaitProcessed("room");
+
+		//then
+		assertThat(shared.refCnt()).isZero();
+	}
+
+	/**
+	 * Commands of a room are applied in order, so once a new member gets a new message, everything before was applied
+	 */
+	private void awaitProcessed(String room) {
+		ChatHub.Member probe = hub.join(room);
+		hub.publish(room, "probe");
+		assertThat(texts(probe).blockFirst(TIMEOUT)).isEqualTo("probe");
+		probe.leave();
+	}
+
+	private static Flux<String> texts(ChatHub.Member member) {
+		return member.messages().map(buffer -> {
+			String text = buffer.toString(UTF_8);
+			DataBufferUtils.release(buffer);
+			return text;
+		});
+	}
+
+	private static ByteBuf original(DataBuffer slice) {
+		return ((NettyDataBuffer) slice).getNativeBuffer().unwrap();
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.nurkiewicz.webflux.demo.websocket;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.DispatcherHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Broadcast latency (from sending a message to receiving it) with {@link #CLIENTS} WebSocket clients
+ * in one <code>/chat</code> room, server and clients on localhost in the same JVM.
+ * <p>
+ * A benchmark rather than a test, so skipped unless enabled: <code>./gradlew test -Pchat.latency --tests '*ChatLatencyTest'</code>.
+ * Needs twice as many file descriptors as clients, skipped otherwise (see <code>ulimit -n</code>).
+ */
+public class ChatLatencyTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ChatLatencyTest.class);
+
+	private static final int CLIENTS = 10_000;
+	private static final int CONNECT_BATCH = 500;
+	private static final int MESSAGES = 100;
+	private static final Duration MESSAGE_INTERVAL = Duration.ofMillis(50);
+	private static final String ROOM = "latency";
+
+	private AnnotationConfigApplicationContext context;
+	private DisposableServer server;
+	private ChatHub hub;
+	private final List<Disposable> clients = new ArrayList<>();
+
+	@Before
+	public void startServer() {
+		Assume.assumeTrue("Enable with -Pchat.latency", Boolean.getBoolean("chat.latency"));
+		Assume.assumeTrue("Not enough file descriptors for " + CLIENTS + " connections", maxFileDescriptors() > 2L * CLIENTS + 1000);
+		context = new AnnotationConfigApplicationContext(WebSocketConfiguration.class);
+		hub = context.getBean(ChatHub.class);
+		server = HttpServer
+				.create()
+				.host("localhost")
+				.port(0)
+				.handle(new ReactorHttpHandlerAdapter(WebHttpHandlerBuilder.webHandler(new DispatcherHandler(context)).build()))
+				.bindNow();
+	}
+
+	@After
+	public void stopServer() {
+		clients.forEach(Disposable::dispose);
+		if (server != null) {
+			server.disposeNow();
+		}
+		if (context != null) {
+			context.close();
+		}
+	}
+
+	@Test
+	public void shouldBroadcastToAllClients() throws InterruptedException {
+		//given
+		URI uri = URI.create("ws://localhost:" + server.port() + "/chat?room=" + ROOM);
+		ReactorNettyWebSocketClient client = new ReactorNettyWebSocketClient(HttpClient.newConnection());
+		AtomicLongArray latencies = new AtomicLongArray(CLIENTS * MESSAGES);
+		AtomicInteger received = new AtomicInteger();
+		for (int i = 0; i < CLIENTS; i++) {
+			clients.add(client
+					.execute(uri, session -> session
+							.receive()
+							.map(WebSocketMessage::getPayloadAsText)
+							.doOnNext(sent -> {
+								long latency = System.nanoTime() - Long.parseLong(sent);
+								int index = received.getAndIncrement();
+								if (index < latencies.length()) {
+									latencies.set(index, latency);
+								}
+							})
+							.then())
+					.subscribe());
+			if ((i + 1) % CONNECT_BATCH == 0) {
+				awaitMembers(i + 1);
+			}
+		}
+		awaitMembers(CLIENTS);
+
+		//when
+		clients.add(client
+				.execute(uri, session -> session.send(Flux
+						.interval(MESSAGE_INTERVAL)
+						.take(MESSAGES)
+						.map(x -> session.textMessage(Long.toString(System.nanoTime()))))
+						.then(session.receive().then()))
+				.subscribe());
+		long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+		while (received.get() < latencies.length() && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+
+		//then
+		assertThat(received.get()).isEqualTo(latencies.length());
+		assertThat(hub.evicted()).isZero();
+		long[] sorted = IntStream.range(0, latencies.length()).mapToLong(latencies::get).sorted().toArray();
+		log.info("{} clients, {} messages: p50 {} us, p99 {} us, p99.9 {} us, max {} us",
+				CLIENTS, MESSAGES,
+				micros(sorted, 0.50), micros(sorted, 0.99), micros(sorted, 0.999), sorted[sorted.length - 1] / 1000);
+	}
+
+	private void awaitMembers(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (hub.members() < expected) {
+			assertThat(System.nanoTime()).as("%d of %d clients connected", hub.members(), expected).isLessThan(deadline);
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+	}
+
+	private static long micros(long[] sorted, double percentile) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1000;
+	}
+
+	private static long maxFileDescriptors() {
+		return ManagementFactory.getOperatingSystemMXBean() instanceof UnixOperatingSystemMXBean ?
+				((UnixOperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getMaxFileDescriptorCount() :
+				Long.MAX_VALUE;
+	}
+
+}